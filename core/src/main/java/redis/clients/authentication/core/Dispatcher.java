@@ -7,6 +7,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,25 +15,79 @@ import org.slf4j.LoggerFactory;
  * Dispatches requests to the identity provider asynchronously with a timeout for the request execution.
  */
 class Dispatcher {
-    private ExecutorService executor = Executors.newFixedThreadPool(2);
+    private ExecutorService executor;
+    private ExecutorService standbyExecutor;
     private Exception error;
     private long tokenRequestExecTimeoutInMs;
     private IdentityProvider identityProvider;
     private Logger logger = LoggerFactory.getLogger(getClass());
 
     public Dispatcher(IdentityProvider provider, long tokenRequestExecTimeoutInMs) {
+        this(provider, tokenRequestExecTimeoutInMs, Executors.newFixedThreadPool(2));
+    }
+
+    Dispatcher(IdentityProvider provider, long tokenRequestExecTimeoutInMs,
+            ExecutorService executor) {
+        this(provider, tokenRequestExecTimeoutInMs, executor, executor);
+    }
+
+    /**
+     * @param provider
+     * @param tokenRequestExecTimeoutInMs
+     * @param executor executor the requests of the renewals are dispatched to
+     * @param standbyExecutor executor the standby token requests are dispatched to, so that they never
+     * hold a thread a renewal needs
+     */
+    Dispatcher(IdentityProvider provider, long tokenRequestExecTimeoutInMs,
+            ExecutorService executor, ExecutorService standbyExecutor) {
         this.tokenRequestExecTimeoutInMs = tokenRequestExecTimeoutInMs;
         this.identityProvider = provider;
+        this.executor = executor;
+        this.standbyExecutor = standbyExecutor;
     }
 
     /**
      * Dispatches a request to the identity provider asynchronously 
      * with a timeout for the request execution and returns the request object
+     * @param renewal whether the caller renews a token it has, see {@link IdentityProvider#renewToken()}
      * @return
      */
-    public Request requestTokenAsync() {
-        Future<Token> request = executor.submit(() -> requestToken());
-        return () -> request.get(tokenRequestExecTimeoutInMs, TimeUnit.MILLISECONDS);
+    public Request requestTokenAsync(boolean renewal) {
+        return requestTokenAsync(tokenRequestExecTimeoutInMs, renewal);
+    }
+
+    /**
+     * Dispatches a request to the identity provider asynchronously
+     * with the given timeout for the request execution and returns the request object
+     * @param timeoutInMs
+     * @param renewal whether the caller renews a token it has, see {@link IdentityProvider#renewToken()}
+     * @return
+     */
+    public Request requestTokenAsync(long timeoutInMs, boolean renewal) {
+        Future<Token> request = executor.submit(() -> requestToken(renewal));
+        return () -> request.get(timeoutInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Dispatches a standby token request to the identity provider on the standby executor, and hands
+     * its token, or its failure, to the given callback there, so that no thread waits for it.
+     * Its failure is not the one {@link #getError()} reports for the renewals.
+     * @param callback
+     * @return the request, to cancel it with
+     */
+    public Future<?> requestStandbyTokenAsync(BiConsumer<Token, Exception> callback) {
+        return standbyExecutor.submit(() -> {
+            Token token;
+            try {
+                token = identityProvider.renewToken();
+            } catch (Exception e) {
+                logger.warn("Standby token request to identity provider failed with message: "
+                        + e.getMessage(), e);
+                callback.accept(null, e);
+                return;
+            }
+            callback.accept(token, null);
+        });
     }
 
     public Exception getError() {
@@ -41,16 +96,18 @@ class Dispatcher {
 
     public void stop() {
         executor.shutdown();
+        standbyExecutor.shutdown();
     }
 
     /**
      * Makes the actual request to the identity provider
+     * @param renewal
      * @return
      */
-    private Token requestToken() {
+    private Token requestToken(boolean renewal) {
         error = null;
         try {
-            return identityProvider.requestToken();
+            return renewal ? identityProvider.renewToken() : identityProvider.requestToken();
         } catch (Exception e) {
             error = e;
             logger.error("Request to identity provider failed with message: " + e.getMessage(), e);
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token listener running the callbacks of another listener on the given executor, e.g. the event loop
+ * of a client, so that the renewal thread only hands them off and is never blocked by the work they do.
+ * See {@link TokenManager#start(TokenListener, Executor, boolean)}.
+ * <p>
+ * A renewed token is not delivered once a later one was handed off, so an executor running the
+ * callbacks out of order, or late, never makes the listener go back to an older token. A callback the
+ * executor rejects, e.g. because it was shut down, is dropped.
+ */
+public class ExecutorTokenListener implements TokenListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorTokenListener.class);
+
+    private final TokenListener listener;
+    private final Executor executor;
+    private final AtomicLong renewals = new AtomicLong();
+
+    public ExecutorTokenListener(TokenListener listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onTokenRenewed(Token newToken) {
+        long renewal = renewals.incrementAndGet();
+        execute(() -> {
+            if (renewals.get() == renewal) {
+                listener.onTokenRenewed(newToken);
+            }
+        });
+    }
+
+    @Override
+    public void onTokenUnchanged(Token currentToken) {
+        execute(() -> listener.onTokenUnchanged(currentToken));
+    }
+
+    @Override
+    public void onError(Exception reason) {
+        execute(() -> listener.onError(reason));
+    }
+
+    public TokenListener getListener() {
+        return listener;
+    }
+
+    private void execute(Runnable callback) {
+        try {
+            executor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Token listener callback was rejected by its executor!", e);
+        }
+    }
+}
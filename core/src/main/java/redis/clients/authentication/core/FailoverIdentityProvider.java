@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import redis.clients.authentication.core.IdentityProviderException.Classification;
+
+/**
+ * Identity provider requesting tokens from the first of a chain of providers that succeeds, e.g. a
+ * managed identity, with a service principal to fall back to where there is none.
+ * <p>
+ * The provider that succeeded last is tried first on the next request, the others follow in the order
+ * they were given. A provider that failed is skipped for a cool-down, unless all of them are cooling
+ * down.
+ * With racing, as long as no provider has succeeded yet, the first two are requested at once and the
+ * first token either of them returns is taken, so that an unreachable provider does not hold up the
+ * first token for its whole timeout.
+ */
+public class FailoverIdentityProvider implements IdentityProvider {
+
+    private static final ExecutorService racer = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "authx-failover-racer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<IdentityProvider> providers;
+    private final long coolDownInMs;
+    private final boolean racing;
+    private final AtomicLongArray coolingDownUntil;
+    // index of the provider that succeeded last, -1 if none did yet
+    private volatile int preferred = -1;
+
+    /**
+     * @param providers in the order they are tried
+     * @param coolDownInMs time a failed provider is skipped for
+     * @param racing whether the first two providers are requested at once until one of them succeeds
+     */
+    public FailoverIdentityProvider(List<IdentityProvider> providers, long coolDownInMs,
+            boolean racing) {
+        if (providers == null || providers.isEmpty()) {
+            throw new AuthXException("At least one identity provider is required!");
+        }
+        this.providers = Collections.unmodifiableList(new ArrayList<>(providers));
+        this.coolDownInMs = coolDownInMs;
+        this.racing = racing;
+        this.coolingDownUntil = new AtomicLongArray(providers.size());
+    }
+
+    public List<IdentityProvider> getProviders() {
+        return providers;
+    }
+
+    /**
+     * @return the provider that succeeded last, null if none did yet
+     */
+    public IdentityProvider getPreferred() {
+        int index = preferred;
+        return index < 0 ? null : providers.get(index);
+    }
+
+    @Override
+    public Token requestToken() {
+        return request(false);
+    }
+
+    /**
+     * Renews the token with the provider that succeeded last, or the next one, see
+     * {@link IdentityProvider#renewToken()}
+     */
+    @Override
+    public Token renewToken() {
+        return request(true);
+    }
+
+    private Token request(boolean renewal) {
+        List<Integer> candidates = candidates();
+        List<RuntimeException> failures = new ArrayList<>();
+        int next = 0;
+        if (racing && preferred < 0 && candidates.size() > 1) {
+            Token token = race(candidates.get(0), candidates.get(1), renewal, failures);
+            if (token != null) {
+                return token;
+            }
+            next = 2;
+        }
+        for (; next < candidates.size(); next++) {
+            int index = candidates.get(next);
+            try {
+                Token token = request(providers.get(index), renewal);
+                preferred = index;
+                return token;
+            } catch (RuntimeException e) {
+                onFailure(index);
+                failures.add(e);
+            }
+        }
+        throw allFailed(failures);
+    }
+
+    private List<Integer> candidates() {
+        long now = System.currentTimeMillis();
+        List<Integer> candidates = new ArrayList<>(providers.size());
+        int first = preferred;
+        if (first >= 0 && coolingDownUntil.get(first) <= now) {
+            candidates.add(first);
+        }
+        for (int i = 0; i < providers.size(); i++) {
+            if (i != first && coolingDownUntil.get(i) <= now) {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // all of them failed recently, there is nothing better to do than trying them again
+            for (int i = 0; i < providers.size(); i++) {
+                candidates.add(i);
+            }
+        }
+        return candidates;
+    }
+
+    private static Token request(IdentityProvider provider, boolean renewal) {
+        return renewal ? provider.renewToken() : provider.requestToken();
+    }
+
+    private Token race(int first, int second, boolean renewal, List<RuntimeException> failures) {
+        CompletionService<Token> completion = new ExecutorCompletionService<>(racer);
+        List<Future<Token>> requests = new ArrayList<>(2);
+        AtomicBoolean decided = new AtomicBoolean();
+        for (int index : new int[] { first, second }) {
+            requests.add(completion.submit(() -> {
+                Token token;
+                try {
+                    token = request(providers.get(index), renewal);
+                } catch (RuntimeException e) {
+                    onFailure(index);
+                    throw e;
+                }
+                if (decided.compareAndSet(false, true)) {
+                    return token;
+                }
+                // the other request won the race, nothing hands this token out
+                token.wipe();
+                return null;
+            }));
+        }
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                Future<Token> done = completion.take();
+                try {
+                    Token token = done.get();
+                    if (token == null) {
+                        continue;
+                    }
+                    // the other request is left to complete, it wipes its token itself
+                    preferred = done == requests.get(0) ? first : second;
+                    return token;
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new AuthXException("Token request failed!", e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdentityProviderException("Interrupted while racing identity providers!", e);
+        }
+        return null;
+    }
+
+    private void onFailure(int index) {
+        coolingDownUntil.set(index, System.currentTimeMillis() + coolDownInMs);
+    }
+
+    /**
+     * Classifies the failure of the whole chain: permanent only if every provider failed permanently,
+     * throttled if none failed transiently, with the shortest delay any of them asked for
+     */
+    private static IdentityProviderException allFailed(List<RuntimeException> failures) {
+        boolean anyTransient = false;
+        boolean anyThrottled = false;
+        long retryAfterInMs = Long.MAX_VALUE;
+        for (RuntimeException failure : failures) {
+            IdentityProviderException classified = IdentityProviderException.find(failure);
+            Classification classification = classified == null ? Classification.TRANSIENT
+                    : classified.getClassification();
+            if (classification == Classification.TRANSIENT) {
+                anyTransient = true;
+            } else if (classification == Classification.THROTTLED) {
+                anyThrottled = true;
+                retryAfterInMs = Math.min(retryAfterInMs, classified.getRetryAfterInMs());
+            }
+        }
+        Classification classification = anyTransient ? Classification.TRANSIENT
+                : anyThrottled ? Classification.THROTTLED : Classification.PERMANENT;
+        IdentityProviderException e = new IdentityProviderException(
+                "All identity providers failed!", failures.get(0), classification,
+                anyThrottled && !anyTransient ? retryAfterInMs : 0);
+        for (int i = 1; i < failures.size(); i++) {
+            e.addSuppressed(failures.get(i));
+        }
+        return e;
+    }
+}
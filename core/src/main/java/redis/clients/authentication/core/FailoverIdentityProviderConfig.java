@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Config of a {@link FailoverIdentityProvider} over the providers of the given configs.
+ */
+public class FailoverIdentityProviderConfig implements IdentityProviderConfig {
+
+    private final List<IdentityProviderConfig> configs;
+    private final long coolDownInMs;
+    private final boolean racing;
+    private FailoverIdentityProvider provider;
+
+    /**
+     * @param configs in the order their providers are tried
+     * @param coolDownInMs time a failed provider is skipped for
+     * @param racing whether the first two providers are requested at once until one of them succeeds
+     */
+    public FailoverIdentityProviderConfig(List<IdentityProviderConfig> configs, long coolDownInMs,
+            boolean racing) {
+        this.configs = Collections.unmodifiableList(new ArrayList<>(configs));
+        this.coolDownInMs = coolDownInMs;
+        this.racing = racing;
+    }
+
+    public List<IdentityProviderConfig> getConfigs() {
+        return configs;
+    }
+
+    /**
+     * Returns the provider of this config. It is created on the first call and shared by every caller
+     * after that, so that what it learned about the providers is shared as well.
+     */
+    @Override
+    public synchronized IdentityProvider getProvider() {
+        if (provider == null) {
+            List<IdentityProvider> providers = new ArrayList<>(configs.size());
+            for (IdentityProviderConfig config : configs) {
+                providers.add(config.getProvider());
+            }
+            provider = new FailoverIdentityProvider(providers, coolDownInMs, racing);
+        }
+        return provider;
+    }
+}
@@ -7,6 +7,20 @@
 package redis.clients.authentication.core;
 
 public interface IdentityProvider {
-    
+
+    /**
+     * Requests the initial token of a caller, which a provider may serve from a cache
+     * @return
+     */
     Token requestToken();
+
+    /**
+     * Requests a token to replace the one the caller has, which a provider always gets anew.
+     * The token manager calls it for every request once it has received its initial token.
+     * By default it is the same as {@link #requestToken()}.
+     * @return
+     */
+    default Token renewToken() {
+        return requestToken();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+/**
+ * Failure of a token request, classified by the identity provider so that the token manager can
+ * decide whether and when to retry it.
+ * Failures that are not classified are treated as transient.
+ */
+public class IdentityProviderException extends AuthXException {
+
+    public enum Classification {
+        /**
+         * The request may succeed when retried after the configured retry delay.
+         */
+        TRANSIENT,
+        /**
+         * The identity provider asked to back off, the request should not be retried before the
+         * delay it provided.
+         */
+        THROTTLED,
+        /**
+         * Retrying will not help, e.g. the credentials are invalid or the client is unknown.
+         */
+        PERMANENT
+    }
+
+    private final Classification classification;
+    private final long retryAfterInMs;
+
+    public IdentityProviderException(String message, Throwable cause) {
+        this(message, cause, Classification.TRANSIENT, 0);
+    }
+
+    public IdentityProviderException(String message, Throwable cause,
+            Classification classification, long retryAfterInMs) {
+        super(message, cause);
+        this.classification = classification;
+        this.retryAfterInMs = retryAfterInMs;
+    }
+
+    public Classification getClassification() {
+        return classification;
+    }
+
+    /**
+     * Represents the delay in milliseconds requested by the identity provider before the next attempt.
+     * Only meaningful for throttled failures, 0 if the provider did not specify one.
+     */
+    public long getRetryAfterInMs() {
+        return retryAfterInMs;
+    }
+
+    /**
+     * Returns the first IdentityProviderException in the cause chain of the given failure, or null
+     * if there is none
+     * @param failure
+     * @return
+     */
+    public static IdentityProviderException find(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof IdentityProviderException) {
+                return (IdentityProviderException) t;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * Token keeping its value outside of the heap, in a direct buffer that is overwritten with zeros when
+ * the token is wiped, so that it does not linger in the heap, and in heap dumps, until it is collected.
+ * The token manager wipes a token once it was renewed and expired, or once it was stopped.
+ * <p>
+ * {@link #getValueBytes()} gives access to the value without copying it to the heap,
+ * {@link #getValue()} creates a String of it on every call.
+ */
+public class OffHeapToken implements Token {
+
+    private final String user;
+    private final ByteBuffer value;
+    private final long expiresAt;
+    private final long receivedAt;
+    private final BiFunction<String, Class<?>, ?> claimQuery;
+    private volatile boolean wiped;
+    private volatile TokenClaims claims;
+
+    /**
+     * @param user
+     * @param value UTF-8 bytes of the value, overwritten with zeros once they are copied
+     * @param expiresAt
+     * @param receivedAt
+     * @param claimQuery looks up a claim of the token by its name and type
+     */
+    public OffHeapToken(String user, byte[] value, long expiresAt, long receivedAt,
+            BiFunction<String, Class<?>, ?> claimQuery) {
+        this.user = user;
+        this.value = ByteBuffer.allocateDirect(value.length);
+        this.value.put(value).flip();
+        Arrays.fill(value, (byte) 0);
+        this.expiresAt = expiresAt;
+        this.receivedAt = receivedAt;
+        this.claimQuery = claimQuery;
+    }
+
+    @Override
+    public String getUser() {
+        return user;
+    }
+
+    @Override
+    public String getValue() {
+        ByteBuffer bytes = getValueBytes();
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        try {
+            return new String(copy, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(copy, (byte) 0);
+        }
+    }
+
+    @Override
+    public ByteBuffer getValueBytes() {
+        if (wiped) {
+            throw new AuthXException("Token was wiped!");
+        }
+        return value.asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void wipe() {
+        if (!wiped) {
+            wiped = true;
+            for (int i = 0; i < value.limit(); i++) {
+                value.put(i, (byte) 0);
+            }
+        }
+    }
+
+    public boolean isWiped() {
+        return wiped;
+    }
+
+    @Override
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    @Override
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    @Override
+    public boolean isExpired() {
+        return System.currentTimeMillis() > expiresAt;
+    }
+
+    @Override
+    public long ttl() {
+        return expiresAt - System.currentTimeMillis();
+    }
+
+    @Override
+    public <T> T tryGet(String key, Class<T> clazz) {
+        return (T) claimQuery.apply(key, clazz);
+    }
+
+    @Override
+    public TokenClaims getClaims() {
+        if (claims == null) {
+            claims = TokenClaims.of(this);
+        }
+        return claims;
+    }
+
+    @Override
+    public String toString() {
+        // the value is not printed, it should not end up in logs either
+        return "OffHeapToken{user=" + user + ", expiresAt=" + expiresAt + ", wiped=" + wiped + "}";
+    }
+}
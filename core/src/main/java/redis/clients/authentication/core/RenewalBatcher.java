@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wakes up once for all the renewals that are due within the same coalescing window, and hands them
+ * to the schedulers of their token managers together.
+ * A renewal is moved to the start of the window its deadline falls into, so it runs at most one window
+ * earlier than it would otherwise, never later. The batch is only handed off, each renewal then runs
+ * and waits for its token on the scheduler of its own token manager, so the requests of a batch are
+ * sent to the identity provider together.
+ * The batchers of the process, one per window length, all share a single scheduler thread.
+ */
+final class RenewalBatcher {
+
+    private static final ConcurrentHashMap<Long, RenewalBatcher> batchers = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService sharedScheduler = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "authx-renewal-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final long windowInMs;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    private static final class Batch {
+        private List<Runnable> tasks = new ArrayList<>();
+
+        synchronized boolean add(Runnable task) {
+            if (tasks == null) {
+                return false;
+            }
+            tasks.add(task);
+            return true;
+        }
+
+        synchronized List<Runnable> drain() {
+            List<Runnable> drained = tasks;
+            tasks = null;
+            return drained;
+        }
+    }
+
+    /**
+     * Creates a batcher running the renewals on the given clock and scheduler, e.g. in virtual time.
+     * Only the token managers sharing a batcher have their renewals batched together.
+     * @param windowInMs
+     * @param clock
+     * @param scheduler
+     */
+    RenewalBatcher(long windowInMs, Clock clock, ScheduledExecutorService scheduler) {
+        this.windowInMs = windowInMs;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the batcher of the process for the given window length, on the system clock
+     * @param windowInMs
+     * @return
+     */
+    static RenewalBatcher of(long windowInMs) {
+        return batchers.computeIfAbsent(windowInMs,
+            window -> new RenewalBatcher(window, Clock.systemUTC(), sharedScheduler));
+    }
+
+    long getWindowInMs() {
+        return windowInMs;
+    }
+
+    /**
+     * Schedules the given task, which must only hand the renewal off without blocking, at the start of
+     * the window the given delay ends in
+     * @param task
+     * @param delayInMs
+     */
+    void schedule(Runnable task, long delayInMs) {
+        long now = clock.millis();
+        long slot = (now + delayInMs) / windowInMs * windowInMs;
+        Batch batch;
+        do {
+            // a batch that fired meanwhile was already removed, the next one is put in its place
+            batch = batches.get(slot);
+            if (batch == null) {
+                Batch created = new Batch();
+                batch = batches.putIfAbsent(slot, created);
+                if (batch == null) {
+                    batch = created;
+                    scheduler.schedule(() -> fire(slot), Math.max(0, slot - now),
+                        TimeUnit.MILLISECONDS);
+                }
+            }
+        } while (!batch.add(task));
+    }
+
+    private void fire(long slot) {
+        Batch batch = batches.remove(slot);
+        if (batch == null) {
+            return;
+        }
+        for (Runnable task : batch.drain()) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // the other renewals of the batch are still handed off
+                logger.error("Handing off a batched token renewal failed with message: "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the records of the last renewals of a token manager in a fixed-size ring, where the oldest
+ * record is overwritten by the newest. Adding a record and reading them does not lock, so it costs the
+ * renewal nothing but a slot write. See {@link TokenManager#getRenewalHistory()}.
+ */
+public final class RenewalHistory {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final AtomicReferenceArray<RenewalRecord> records;
+    private final AtomicLong next = new AtomicLong();
+
+    public RenewalHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        this.records = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(RenewalRecord record) {
+        records.set((int) (next.getAndIncrement() % records.length()), record);
+    }
+
+    /**
+     * Returns the records kept, oldest first
+     * @return
+     */
+    public List<RenewalRecord> getRecords() {
+        List<RenewalRecord> snapshot = new ArrayList<>(records.length());
+        for (int i = 0; i < records.length(); i++) {
+            RenewalRecord record = records.get(i);
+            if (record != null) {
+                snapshot.add(record);
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(RenewalRecord::getStartedAt));
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of renewals recorded, including the ones already overwritten
+     * @return
+     */
+    public long getTotalCount() {
+        return next.get();
+    }
+
+    public int getCapacity() {
+        return records.length();
+    }
+
+    public RenewalStats getStats() {
+        return RenewalStats.of(getRecords());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+/**
+ * Record of one renewal of a token manager, or of one of its standby token requests, see
+ * {@link RenewalHistory}.
+ */
+public final class RenewalRecord {
+
+    private final long startedAt;
+    private final long completedAt;
+    private final int attempts;
+    private final boolean succeeded;
+    private final long lifetimeInMs;
+    private final long marginInMs;
+    private final boolean standby;
+
+    public RenewalRecord(long startedAt, long completedAt, int attempts, boolean succeeded,
+            long lifetimeInMs, long marginInMs) {
+        this(startedAt, completedAt, attempts, succeeded, lifetimeInMs, marginInMs, false);
+    }
+
+    /**
+     * @param startedAt
+     * @param completedAt
+     * @param attempts number of requests to the identity provider, 0 for a renewal that took the
+     * standby token
+     * @param succeeded
+     * @param lifetimeInMs lifetime of the token received, 0 if the renewal failed
+     * @param marginInMs time left to the expiration of the renewed token when the renewal completed,
+     * {@link Long#MAX_VALUE} if there was none
+     * @param standby whether it records a standby token request rather than a renewal
+     */
+    public RenewalRecord(long startedAt, long completedAt, int attempts, boolean succeeded,
+            long lifetimeInMs, long marginInMs, boolean standby) {
+        this.startedAt = startedAt;
+        this.completedAt = completedAt;
+        this.attempts = attempts;
+        this.succeeded = succeeded;
+        this.lifetimeInMs = lifetimeInMs;
+        this.marginInMs = marginInMs;
+        this.standby = standby;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * @return the time from the start of the renewal to the token, including retries
+     */
+    public long getAcquisitionTimeInMs() {
+        return completedAt - startedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    public long getLifetimeInMs() {
+        return lifetimeInMs;
+    }
+
+    public long getMarginInMs() {
+        return marginInMs;
+    }
+
+    public boolean isStandby() {
+        return standby;
+    }
+
+    @Override
+    public String toString() {
+        return "RenewalRecord{startedAt=" + startedAt + ", acquisitionTimeInMs="
+                + getAcquisitionTimeInMs() + ", attempts=" + attempts + ", succeeded=" + succeeded
+                + ", lifetimeInMs=" + lifetimeInMs + ", marginInMs=" + marginInMs + ", standby="
+                + standby + "}";
+    }
+}
@@ -5,7 +5,10 @@ package redis.clients.authentication.core;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -13,26 +16,74 @@ import java.util.function.Supplier;
  * Schedules a task for token renewal.
  */
 class RenewalScheduler {
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private RenewalTask lastTask;
+    private ScheduledExecutorService scheduler;
+    private volatile RenewalTask lastTask;
+    private ScheduledFuture<?> asideTask;
     private Supplier<Token> renewToken;
     private boolean stopped = false;
+    private RenewalBatcher batcher;
 
     public RenewalScheduler(Supplier<Token> renewToken) {
+        this(renewToken, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    RenewalScheduler(Supplier<Token> renewToken, ScheduledExecutorService scheduler) {
+        this(renewToken, scheduler, null);
+    }
+
+    /**
+     * @param renewToken
+     * @param scheduler
+     * @param batcher batcher the renewals are run by together with the others due in the same window,
+     * null to schedule each renewal on its own
+     */
+    RenewalScheduler(Supplier<Token> renewToken, ScheduledExecutorService scheduler,
+            RenewalBatcher batcher) {
         this.renewToken = renewToken;
+        this.scheduler = scheduler;
+        this.batcher = batcher;
     }
 
     /**
      * Schedules a task to renew the token with a given delay
      * Wraps the supplier function into RenewalTask
+     * With a batcher, a renewal due no earlier than its window is handed to the scheduler by the batcher,
+     * together with the others due in the same window
      * @param delay
      * @return
      */
     public RenewalTask scheduleNext(long delay) {
-        // Schedule the task to run after the given delay
-        lastTask = new RenewalTask(
-                scheduler.schedule(() -> renewToken.get(), delay, TimeUnit.MILLISECONDS));
-        return lastTask;
+        // the task is the last one before it can run, as a renewal that fails schedules its retry
+        FutureTask<Token> task = new FutureTask<>(() -> renewToken.get());
+        RenewalTask renewal = new RenewalTask(task);
+        lastTask = renewal;
+        if (batcher != null && delay >= batcher.getWindowInMs()) {
+            // the batcher only hands the task off, it runs and waits for its token on the scheduler
+            batcher.schedule(() -> {
+                try {
+                    scheduler.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+                }
+            }, delay);
+        } else {
+            // Schedule the task to run after the given delay
+            renewal.scheduledAs(scheduler.schedule(task, delay, TimeUnit.MILLISECONDS));
+        }
+        return renewal;
+    }
+
+    /**
+     * Schedules a task aside the renewal chain with a given delay, e.g. acquiring a standby token
+     * It replaces the previous one if that is still pending
+     * @param task
+     * @param delay
+     */
+    public void scheduleAside(Runnable task, long delay) {
+        if (asideTask != null) {
+            asideTask.cancel(false);
+        }
+        asideTask = scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -61,6 +112,9 @@ class RenewalScheduler {
     public void stop() {
         stopped = true;
         lastTask.cancel();
+        if (asideTask != null) {
+            asideTask.cancel(true);
+        }
         scheduler.shutdown();
     }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statistics of the renewals kept in a {@link RenewalHistory}, with a recommendation of the renewal
+ * settings, see {@link #recommend(long)}. The standby token requests are counted apart from the
+ * renewals, but among the requests to the identity provider and their acquisition times.
+ */
+public final class RenewalStats {
+
+    private static final double HOUR_IN_MS = 60 * 60 * 1000;
+
+    private final int renewals;
+    private final int failures;
+    private final int standbyRequests;
+    private final int failedStandbyRequests;
+    private final long identityProviderCalls;
+    private final double identityProviderCallsPerHour;
+    private final long minMarginInMs;
+    private final long p99AcquisitionTimeInMs;
+    private final long minLifetimeInMs;
+    private final long maxLifetimeInMs;
+    private final long averageLifetimeInMs;
+    private final double averageAttempts;
+
+    private RenewalStats(List<RenewalRecord> records) {
+        List<Long> acquisitionTimes = new ArrayList<>();
+        long calls = 0;
+        long lifetimes = 0;
+        long minMargin = Long.MAX_VALUE;
+        long minLifetime = Long.MAX_VALUE;
+        long maxLifetime = 0;
+        int succeeded = 0;
+        int failed = 0;
+        int standby = 0;
+        int failedStandby = 0;
+        for (RenewalRecord record : records) {
+            calls += record.getAttempts();
+            if (record.isStandby()) {
+                standby++;
+                if (record.isSucceeded()) {
+                    acquisitionTimes.add(record.getAcquisitionTimeInMs());
+                } else {
+                    failedStandby++;
+                }
+                continue;
+            }
+            if (!record.isSucceeded()) {
+                failed++;
+                continue;
+            }
+            if (record.getAttempts() > 0) {
+                // one that took the standby token did not wait for the identity provider
+                acquisitionTimes.add(record.getAcquisitionTimeInMs());
+            }
+            succeeded++;
+            lifetimes += record.getLifetimeInMs();
+            minLifetime = Math.min(minLifetime, record.getLifetimeInMs());
+            maxLifetime = Math.max(maxLifetime, record.getLifetimeInMs());
+            minMargin = Math.min(minMargin, record.getMarginInMs());
+        }
+        Collections.sort(acquisitionTimes);
+        long span = records.isEmpty() ? 0
+                : records.get(records.size() - 1).getCompletedAt() - records.get(0).getStartedAt();
+
+        this.renewals = records.size() - standby;
+        this.failures = failed;
+        this.standbyRequests = standby;
+        this.failedStandbyRequests = failedStandby;
+        this.identityProviderCalls = calls;
+        this.identityProviderCallsPerHour = span > 0 ? calls * HOUR_IN_MS / span : 0;
+        this.minMarginInMs = minMargin;
+        this.p99AcquisitionTimeInMs = acquisitionTimes.isEmpty() ? 0
+                : acquisitionTimes.get((int) Math.ceil(acquisitionTimes.size() * 0.99) - 1);
+        this.minLifetimeInMs = succeeded == 0 ? 0 : minLifetime;
+        this.maxLifetimeInMs = maxLifetime;
+        this.averageLifetimeInMs = succeeded == 0 ? 0 : lifetimes / succeeded;
+        this.averageAttempts = renewals == 0 ? 0 : (double) calls / renewals;
+    }
+
+    /**
+     * Computes the statistics of the given records, oldest first
+     * @param records
+     * @return
+     */
+    public static RenewalStats of(List<RenewalRecord> records) {
+        return new RenewalStats(records);
+    }
+
+    public int getRenewals() {
+        return renewals;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public int getStandbyRequests() {
+        return standbyRequests;
+    }
+
+    public int getFailedStandbyRequests() {
+        return failedStandbyRequests;
+    }
+
+    /**
+     * @return the requests to the identity provider, those of the standby tokens included
+     */
+    public long getIdentityProviderCalls() {
+        return identityProviderCalls;
+    }
+
+    /**
+     * @return the rate of requests to the identity provider over the time the records span
+     */
+    public double getIdentityProviderCallsPerHour() {
+        return identityProviderCallsPerHour;
+    }
+
+    /**
+     * @return the least time left to the expiration of a token when its renewal completed,
+     * {@link Long#MAX_VALUE} if no token was renewed yet
+     */
+    public long getMinMarginInMs() {
+        return minMarginInMs;
+    }
+
+    public long getP99AcquisitionTimeInMs() {
+        return p99AcquisitionTimeInMs;
+    }
+
+    public long getMinLifetimeInMs() {
+        return minLifetimeInMs;
+    }
+
+    public long getMaxLifetimeInMs() {
+        return maxLifetimeInMs;
+    }
+
+    public long getAverageLifetimeInMs() {
+        return averageLifetimeInMs;
+    }
+
+    /**
+     * @return the requests to the identity provider per renewal, those of the standby tokens included
+     */
+    public double getAverageAttempts() {
+        return averageAttempts;
+    }
+
+    /**
+     * Recommends the renewal settings that renew as late as possible, and so request the fewest
+     * tokens, while leaving the given margin to the expiration of the renewed token.
+     * The renewal has to start the target margin plus the p99 acquisition time before the expiration.
+     * The lower refresh bound is set to that, and the expiration refresh ratio high enough not to renew
+     * any earlier for the longest token lifetime seen.
+     * @param targetMarginInMs
+     * @return null if no renewal succeeded yet
+     */
+    public Recommendation recommend(long targetMarginInMs) {
+        if (renewals == failures) {
+            return null;
+        }
+        long lead = targetMarginInMs + p99AcquisitionTimeInMs;
+        double ratio = 1 - (double) lead / maxLifetimeInMs;
+        ratio = Math.min(0.99, Math.max(0.01, Math.ceil(ratio * 100) / 100));
+        long renewalInterval = Math.max(1, averageLifetimeInMs - lead);
+        return new Recommendation((float) ratio, (int) Math.min(Integer.MAX_VALUE, lead),
+                HOUR_IN_MS / renewalInterval * averageAttempts, lead < minLifetimeInMs);
+    }
+
+    /**
+     * Renewal settings recommended by {@link RenewalStats#recommend(long)}.
+     */
+    public static final class Recommendation {
+        private final float expirationRefreshRatio;
+        private final int lowerRefreshBoundMillis;
+        private final double identityProviderCallsPerHour;
+        private final boolean achievable;
+
+        private Recommendation(float expirationRefreshRatio, int lowerRefreshBoundMillis,
+                double identityProviderCallsPerHour, boolean achievable) {
+            this.expirationRefreshRatio = expirationRefreshRatio;
+            this.lowerRefreshBoundMillis = lowerRefreshBoundMillis;
+            this.identityProviderCallsPerHour = identityProviderCallsPerHour;
+            this.achievable = achievable;
+        }
+
+        public float getExpirationRefreshRatio() {
+            return expirationRefreshRatio;
+        }
+
+        public int getLowerRefreshBoundMillis() {
+            return lowerRefreshBoundMillis;
+        }
+
+        /**
+         * @return the estimated rate of requests to the identity provider with these settings
+         */
+        public double getIdentityProviderCallsPerHour() {
+            return identityProviderCallsPerHour;
+        }
+
+        /**
+         * @return false if the shortest token lifetime seen is too short for the target margin
+         */
+        public boolean isAchievable() {
+            return achievable;
+        }
+
+        @Override
+        public String toString() {
+            return "Recommendation{expirationRefreshRatio=" + expirationRefreshRatio
+                    + ", lowerRefreshBoundMillis=" + lowerRefreshBoundMillis
+                    + ", identityProviderCallsPerHour=" + identityProviderCallsPerHour
+                    + ", achievable=" + achievable + "}";
+        }
+    }
+}
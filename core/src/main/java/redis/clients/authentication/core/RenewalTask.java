@@ -7,21 +7,38 @@
 package redis.clients.authentication.core;
 
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Future;
 
 class RenewalTask {
 
-    private ScheduledFuture<Token> future;
+    private Future<Token> future;
+    private volatile Future<?> scheduled;
 
-    public RenewalTask(ScheduledFuture<Token> future) {
+    public RenewalTask(Future<Token> future) {
         this.future = future;
     }
 
+    /**
+     * Sets the scheduled run of the task, which is cancelled with it, so that a scheduler that is shut
+     * down does not keep waiting for it
+     * @param scheduled
+     */
+    void scheduledAs(Future<?> scheduled) {
+        this.scheduled = scheduled;
+        if (future.isCancelled()) {
+            scheduled.cancel(false);
+        }
+    }
+
     public Token waitForResultOrError() throws InterruptedException, ExecutionException {
         return future.get();
     }
 
     public void cancel() {
         future.cancel(true);
+        Future<?> run = scheduled;
+        if (run != null) {
+            run.cancel(false);
+        }
     }
 }
@@ -15,6 +15,7 @@ public class SimpleToken implements Token {
     private long expiresAt;
     private long receivedAt;
     private Map<String, ?> claims;
+    private volatile TokenClaims tokenClaims;
 
     public SimpleToken(String user, String value, long expiresAt, long receivedAt,
             Map<String, ?> claims) {
@@ -47,7 +48,16 @@ public class SimpleToken implements Token {
 
     @Override
     public <T> T tryGet(String key, Class<T> clazz) {
-        return (T) claims.get(key);
+        Object value = claims == null ? null : claims.get(key);
+        return clazz.isInstance(value) ? clazz.cast(value) : null;
+    }
+
+    @Override
+    public TokenClaims getClaims() {
+        if (tokenClaims == null) {
+            tokenClaims = TokenClaims.of(this);
+        }
+        return tokenClaims;
     }
 
     @Override
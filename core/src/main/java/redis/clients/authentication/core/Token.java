@@ -6,6 +6,9 @@
  */
 package redis.clients.authentication.core;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public interface Token {
 
     public String getUser();
@@ -22,4 +25,28 @@ public interface Token {
 
     public <T> T tryGet(String key, Class<T> clazz);
 
+    /**
+     * Returns the typed view of the common claims of this token. The tokens of this library read the claims
+     * on the first call and keep them.
+     * @return
+     */
+    public default TokenClaims getClaims() {
+        return TokenClaims.of(this);
+    }
+
+    /**
+     * Returns the value of this token as UTF-8 bytes in a read-only buffer, e.g. to write it to a
+     * socket without creating a String. The buffer must not be used after the token was wiped.
+     * @return
+     */
+    public default ByteBuffer getValueBytes() {
+        return ByteBuffer.wrap(getValue().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Overwrites the value of this token if it is kept in memory that can be wiped, see
+     * {@link OffHeapToken}. Does nothing otherwise.
+     */
+    public default void wipe() {
+    }
 }
\ No newline at end of file
@@ -36,6 +36,10 @@ public class TokenAuthConfig {
         private int tokenRequestExecTimeoutInMs;
         private int maxAttemptsToRetry;
         private int delayInMsToRetry;
+        private int renewalDeadlineInMs;
+        private float standbyRefillRatio;
+        private int standbyJitterInMs;
+        private int renewalCoalescingWindowInMs;
 
         public T expirationRefreshRatio(float expirationRefreshRatio) {
             this.expirationRefreshRatio = expirationRefreshRatio;
@@ -62,6 +66,38 @@ public class TokenAuthConfig {
             return (T) this;
         }
 
+        /**
+         * Sets the total time budget of one renewal including retries, see {@link TokenManagerConfig.RetryPolicy#getDeadlineInMs()}
+         * @param renewalDeadlineInMs
+         * @return
+         */
+        public T renewalDeadlineInMs(int renewalDeadlineInMs) {
+            this.renewalDeadlineInMs = renewalDeadlineInMs;
+            return (T) this;
+        }
+
+        /**
+         * Enables acquiring a standby token ahead of each renewal, see {@link TokenManagerConfig.StandbyPolicy}
+         * @param refillRatio
+         * @param jitterInMs
+         * @return
+         */
+        public T standbyToken(float refillRatio, int jitterInMs) {
+            this.standbyRefillRatio = refillRatio;
+            this.standbyJitterInMs = jitterInMs;
+            return (T) this;
+        }
+
+        /**
+         * Batches the renewals due within the given window, see {@link TokenManagerConfig#getRenewalCoalescingWindowInMs()}
+         * @param renewalCoalescingWindowInMs
+         * @return
+         */
+        public T renewalCoalescingWindowInMs(int renewalCoalescingWindowInMs) {
+            this.renewalCoalescingWindowInMs = renewalCoalescingWindowInMs;
+            return (T) this;
+        }
+
         public T identityProviderConfig(IdentityProviderConfig identityProviderConfig) {
             this.identityProviderConfig = identityProviderConfig;
             return (T) this;
@@ -70,7 +106,13 @@ public class TokenAuthConfig {
         public TokenAuthConfig build() {
             return new TokenAuthConfig(new TokenManagerConfig(expirationRefreshRatio,
                     lowerRefreshBoundMillis, tokenRequestExecTimeoutInMs,
-                    new TokenManagerConfig.RetryPolicy(maxAttemptsToRetry, delayInMsToRetry)),
+                    new TokenManagerConfig.RetryPolicy(maxAttemptsToRetry, delayInMsToRetry,
+                            renewalDeadlineInMs),
+                    standbyRefillRatio > 0
+                            ? new TokenManagerConfig.StandbyPolicy(standbyRefillRatio,
+                                    standbyJitterInMs)
+                            : null,
+                    renewalCoalescingWindowInMs),
                     identityProviderConfig);
         }
 
@@ -80,6 +122,9 @@ public class TokenAuthConfig {
                     .tokenRequestExecTimeoutInMs(sample.tokenRequestExecTimeoutInMs)
                     .maxAttemptsToRetry(sample.maxAttemptsToRetry)
                     .delayInMsToRetry(sample.delayInMsToRetry)
+                    .renewalDeadlineInMs(sample.renewalDeadlineInMs)
+                    .standbyToken(sample.standbyRefillRatio, sample.standbyJitterInMs)
+                    .renewalCoalescingWindowInMs(sample.renewalCoalescingWindowInMs)
                     .identityProviderConfig(sample.identityProviderConfig);
         }
     }
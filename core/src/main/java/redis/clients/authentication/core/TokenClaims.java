@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Typed view of the claims of a token commonly read by clients, e.g. for authorization decisions.
+ * It is computed once per token, so that reading a claim does not convert it again.
+ * Timestamps are in milliseconds, 0 if the token does not have them, and collections are immutable and
+ * empty if the token does not have them.
+ */
+public final class TokenClaims {
+
+    private final String objectId;
+    private final String tenantId;
+    private final String appId;
+    private final String subject;
+    private final String issuer;
+    private final List<String> audience;
+    private final List<String> roles;
+    private final List<String> scopes;
+    private final long issuedAt;
+    private final long notBefore;
+    private final long expiresAt;
+
+    private TokenClaims(Token token) {
+        objectId = asString(token.tryGet("oid", Object.class));
+        tenantId = asString(token.tryGet("tid", Object.class));
+        appId = asString(token.tryGet("appid", Object.class));
+        subject = asString(token.tryGet("sub", Object.class));
+        issuer = asString(token.tryGet("iss", Object.class));
+        audience = asList(token.tryGet("aud", Object.class));
+        roles = asList(token.tryGet("roles", Object.class));
+        String scope = asString(token.tryGet("scp", Object.class));
+        scopes = scope == null || scope.trim().isEmpty() ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.asList(scope.trim().split("\\s+")));
+        issuedAt = asMillis(token.tryGet("iat", Object.class));
+        notBefore = asMillis(token.tryGet("nbf", Object.class));
+        expiresAt = token.getExpiresAt();
+    }
+
+    /**
+     * Reads the claims of the given token. Prefer {@link Token#getClaims()}, which reads them only once.
+     * @param token
+     * @return
+     */
+    public static TokenClaims of(Token token) {
+        return new TokenClaims(token);
+    }
+
+    /**
+     * @return the object id of the principal the token was issued to, oid
+     */
+    public String getObjectId() {
+        return objectId;
+    }
+
+    /**
+     * @return the tenant the token was issued in, tid
+     */
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return the application the token was requested by, appid
+     */
+    public String getAppId() {
+        return appId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public List<String> getAudience() {
+        return audience;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return the delegated scopes of the token, scp
+     */
+    public List<String> getScopes() {
+        return scopes;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getNotBefore() {
+        return notBefore;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static List<String> asList(Object value) {
+        Collection<?> values;
+        if (value == null) {
+            return Collections.emptyList();
+        } else if (value instanceof Collection) {
+            values = (Collection<?>) value;
+        } else if (value instanceof Object[]) {
+            values = Arrays.asList((Object[]) value);
+        } else {
+            return Collections.singletonList(value.toString());
+        }
+        List<String> list = new ArrayList<>(values.size());
+        for (Object element : values) {
+            list.add(String.valueOf(element));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Converts a NumericDate claim, which is in seconds, to milliseconds
+     */
+    private static long asMillis(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue() * 1000;
+        }
+        return 0;
+    }
+}
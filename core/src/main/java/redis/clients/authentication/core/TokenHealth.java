@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+/**
+ * Snapshot of the health of a token manager, see {@link TokenManager#health()}.
+ */
+public final class TokenHealth {
+
+    public enum State {
+        /**
+         * No token was received yet
+         */
+        STARTING,
+        /**
+         * The current token is valid and its renewal is scheduled
+         */
+        HEALTHY,
+        /**
+         * The current token is valid and is being renewed
+         */
+        RENEWING,
+        /**
+         * The current token is still valid, but its renewal failed and is being retried
+         */
+        DEGRADED,
+        /**
+         * The renewal gave up, or the current token expired
+         */
+        FAILED,
+        /**
+         * The token manager was stopped
+         */
+        STOPPED
+    }
+
+    private final State state;
+    private final long ttlInMs;
+    private final long timeSinceLastSuccessInMs;
+    private final int consecutiveFailures;
+    private final long nextRenewalAt;
+
+    TokenHealth(State state, long ttlInMs, long timeSinceLastSuccessInMs, int consecutiveFailures,
+            long nextRenewalAt) {
+        this.state = state;
+        this.ttlInMs = ttlInMs;
+        this.timeSinceLastSuccessInMs = timeSinceLastSuccessInMs;
+        this.consecutiveFailures = consecutiveFailures;
+        this.nextRenewalAt = nextRenewalAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the current token can be authenticated with, i.e. the state is healthy, renewing
+     * or degraded
+     */
+    public boolean isReady() {
+        return state == State.HEALTHY || state == State.RENEWING || state == State.DEGRADED;
+    }
+
+    /**
+     * @return the time left to the expiration of the current token, 0 if there is none or it expired
+     */
+    public long getTtlInMs() {
+        return ttlInMs;
+    }
+
+    /**
+     * @return the time since the last token was received, -1 if none was received yet
+     */
+    public long getTimeSinceLastSuccessInMs() {
+        return timeSinceLastSuccessInMs;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return the time the next renewal, or retry, is scheduled at, 0 if none is scheduled
+     */
+    public long getNextRenewalAt() {
+        return nextRenewalAt;
+    }
+
+    /**
+     * Returns the snapshot as a JSON object, e.g. for a health endpoint
+     * @return
+     */
+    public String toJson() {
+        return "{\"state\":\"" + state + "\",\"ready\":" + isReady() + ",\"ttlInMs\":" + ttlInMs
+                + ",\"timeSinceLastSuccessInMs\":" + timeSinceLastSuccessInMs
+                + ",\"consecutiveFailures\":" + consecutiveFailures + ",\"nextRenewalAt\":"
+                + nextRenewalAt + "}";
+    }
+
+    @Override
+    public String toString() {
+        return "TokenHealth" + toJson();
+    }
+}
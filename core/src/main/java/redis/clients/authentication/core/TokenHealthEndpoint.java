@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the health of a token manager over HTTP, on the server built into the JDK so that no web
+ * framework is needed. A GET on the path responds with {@link TokenHealth#toJson()}, with status 200 if
+ * the token manager is ready and 503 otherwise, as expected by readiness probes.
+ * Optional, nothing starts it but the application. The com.sun.net.httpserver package it needs is an
+ * optional import of the bundle, so it resolves on runtimes that do not export it, where only this
+ * class can not be used.
+ */
+public final class TokenHealthEndpoint implements AutoCloseable {
+
+    public static final String DEFAULT_PATH = "/health";
+
+    private final HttpServer server;
+
+    private TokenHealthEndpoint(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts serving the health of the given token manager on {@link #DEFAULT_PATH} of the loopback
+     * address, use {@link #start(TokenManager, InetSocketAddress, String)} to serve it on other
+     * interfaces
+     * @param tokenManager
+     * @param port 0 for an ephemeral port, see {@link #getAddress()}
+     * @return
+     * @throws IOException if the port could not be bound
+     */
+    public static TokenHealthEndpoint start(TokenManager tokenManager, int port) throws IOException {
+        return start(tokenManager, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                DEFAULT_PATH);
+    }
+
+    /**
+     * Starts serving the health of the given token manager on the given address and path
+     * @param tokenManager
+     * @param address
+     * @param path
+     * @return
+     * @throws IOException if the address could not be bound
+     */
+    public static TokenHealthEndpoint start(TokenManager tokenManager, InetSocketAddress address,
+            String path) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext(path, exchange -> handle(tokenManager, exchange));
+        // the default executor runs the handler on the dispatcher thread, which is enough as
+        // reading the health does not block
+        server.start();
+        return new TokenHealthEndpoint(server);
+    }
+
+    private static void handle(TokenManager tokenManager, HttpExchange exchange)
+            throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            TokenHealth health = tokenManager.health();
+            byte[] body = health.toJson().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(health.isReady() ? 200 : 503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -11,4 +11,13 @@ public interface TokenListener {
     void onTokenRenewed(Token newToken);
 
     void onError(Exception reason);
+
+    /**
+     * Called instead of {@link #onTokenRenewed(Token)} when a renewal received the token the listener
+     * already has, e.g. from the token cache of the identity provider, so there is nothing to
+     * re-authenticate with. The next renewal is scheduled as usual.
+     * @param currentToken the token the listener was last notified of
+     */
+    default void onTokenUnchanged(Token currentToken) {
+    }
 }
@@ -3,43 +3,144 @@
  */
 package redis.clients.authentication.core;
 
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import redis.clients.authentication.core.IdentityProviderException.Classification;
 
 public class TokenManager {
 
     private TokenManagerConfig tokenManagerConfig;
     private TokenListener listener;
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
     private AtomicInteger numberOfRetries = new AtomicInteger(0);
-    private Token currentToken = null;
+    private volatile Token currentToken = null;
     private AtomicBoolean started = new AtomicBoolean(false);
     private Dispatcher dispatcher;
     private RenewalScheduler renewalScheduler;
     private int retryDelay;
     private int maxRetries;
+    private int renewalDeadline;
+    private volatile long renewalStartedAt;
+    private Clock clock;
+    private final AtomicReference<Token> standbyToken = new AtomicReference<>();
+    private volatile Future<?> standbyRequest;
+    // renewed tokens, wiped once they expired as whoever got them may still authenticate with them
+    private final Queue<Token> retiredTokens = new ConcurrentLinkedQueue<>();
+    private final TokenPublisher publisher = new TokenPublisher();
+    private final RenewalHistory history = new RenewalHistory(RenewalHistory.DEFAULT_CAPACITY);
+    private volatile boolean renewing;
+    private volatile boolean failed;
+    private volatile long lastSuccessAt = -1;
+    private volatile long nextRenewalAt;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
 
     public TokenManager(IdentityProvider identityProvider, TokenManagerConfig tokenManagerConfig) {
+        this(identityProvider, tokenManagerConfig, Clock.systemUTC(),
+                Executors.newSingleThreadScheduledExecutor(), Executors.newFixedThreadPool(2),
+                tokenManagerConfig.getRenewalCoalescingWindowInMs() > 0
+                        ? RenewalBatcher.of(tokenManagerConfig.getRenewalCoalescingWindowInMs())
+                        : null,
+                // its thread is only started with the first standby token request
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "authx-standby-token");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }));
+    }
+
+    /**
+     * Creates a token manager running on the given clock and executors instead of the system ones.
+     * This allows the renewal cycle to be driven in virtual time, e.g. by a simulation harness.
+     * @param identityProvider
+     * @param tokenManagerConfig
+     * @param clock source of the current time used for renewal calculations
+     * @param scheduler executor the renewal tasks are scheduled on
+     * @param executor executor the identity provider requests are dispatched to
+     */
+    TokenManager(IdentityProvider identityProvider, TokenManagerConfig tokenManagerConfig,
+            Clock clock, ScheduledExecutorService scheduler, ExecutorService executor) {
+        this(identityProvider, tokenManagerConfig, clock, scheduler, executor,
+                tokenManagerConfig.getRenewalCoalescingWindowInMs() > 0
+                        ? new RenewalBatcher(tokenManagerConfig.getRenewalCoalescingWindowInMs(),
+                                clock, scheduler)
+                        : null);
+    }
+
+    /**
+     * Creates a token manager running on the given clock and executors, whose renewals are batched by
+     * the given batcher together with those of the other token managers sharing it.
+     * @param identityProvider
+     * @param tokenManagerConfig
+     * @param clock source of the current time used for renewal calculations
+     * @param scheduler executor the renewal tasks run on, the batched ones handed to it by the batcher
+     * @param executor executor the identity provider requests are dispatched to
+     * @param batcher batcher running on the same clock, null to schedule each renewal on its own
+     */
+    TokenManager(IdentityProvider identityProvider, TokenManagerConfig tokenManagerConfig,
+            Clock clock, ScheduledExecutorService scheduler, ExecutorService executor,
+            RenewalBatcher batcher) {
+        this(identityProvider, tokenManagerConfig, clock, scheduler, executor, batcher, executor);
+    }
+
+    private TokenManager(IdentityProvider identityProvider, TokenManagerConfig tokenManagerConfig,
+            Clock clock, ScheduledExecutorService scheduler, ExecutorService executor,
+            RenewalBatcher batcher, ExecutorService standbyExecutor) {
         this.tokenManagerConfig = tokenManagerConfig;
+        this.clock = clock;
         maxRetries = tokenManagerConfig.getRetryPolicy().getMaxAttempts();
         retryDelay = tokenManagerConfig.getRetryPolicy().getdelayInMs();
-        renewalScheduler = new RenewalScheduler(this::renewToken);
+        renewalDeadline = tokenManagerConfig.getRetryPolicy().getDeadlineInMs();
+        renewalScheduler = new RenewalScheduler(this::renewToken, scheduler, batcher);
         dispatcher = new Dispatcher(identityProvider,
-                tokenManagerConfig.getTokenRequestExecTimeoutInMs());
+                tokenManagerConfig.getTokenRequestExecTimeoutInMs(), executor, standbyExecutor);
     }
 
     /**
-     * Starts the token manager with given listener, blocks if blockForInitialToken is true
+     * Starts the token manager with given listener, whose callbacks run on the given executor, e.g. the
+     * event loop of the client, see {@link ExecutorTokenListener}. Blocks if blockForInitialToken is
+     * true, until the initial token was handed off to the executor.
      * @param listener
+     * @param executor
+     * @param blockForInitialToken
+     */
+    public void start(TokenListener listener, Executor executor, boolean blockForInitialToken) {
+        start(new ExecutorTokenListener(listener, executor), blockForInitialToken);
+    }
+
+    /**
+     * Starts the token manager with given listener, blocks if blockForInitialToken is true
+     * @param listener null if the tokens are only consumed through {@link #tokens()}
      * @param blockForInitialToken
      */
     public void start(TokenListener listener, boolean blockForInitialToken) {
         if (!started.compareAndSet(false, true)) {
             throw new AuthXException("Token manager already started!");
         }
-        this.listener = listener;
-        RenewalTask currentTask = renewalScheduler.scheduleNext(0);
+        this.listener = listener != null ? listener : new TokenListener() {
+            @Override
+            public void onTokenRenewed(Token newToken) {
+            }
+
+            @Override
+            public void onError(Exception reason) {
+            }
+        };
+        RenewalTask currentTask = scheduleRenewal(0);
         if (blockForInitialToken) {
             try {
                 renewalScheduler.waitFor(currentTask);
@@ -53,11 +154,25 @@ public class TokenManager {
      * This method is called by the renewal scheduler
      * Dispatches a request to the identity provider asynchronously, with a timeout for execution, and returns the Token if successfully acquired.
      * If the request fails, it retries until the max number of retries is reached
+     * The initial token is requested with {@link IdentityProvider#requestToken()}, every later one with
+     * {@link IdentityProvider#renewToken()}, so that a provider shared by several token managers knows
+     * which of its requests are renewals
+     * Retries wait at least as long as the identity provider asks for when it throttles the requests,
+     * and a failure the identity provider classified as permanent is not retried at all
+     * With a renewal deadline, each attempt times out at the latest when the deadline is reached,
+     * and no retry is scheduled that would start after it
      * If the request fails after max number of retries, it throws an exception
      * When a new Token is received, it schedules the next renewal with calculating the delay in respect to the new token.
+     * If it has the value and expiration of the current token, the listener is not notified of a renewal
+     * but through {@link TokenListener#onTokenUnchanged(Token)}, and the current token is kept.
+     * The token it renews is wiped once it expired, by the first renewal attempt after, or when the token
+     * manager is stopped, as the listener, or any other holder, may still authenticate with it until
+     * then, see {@link Token#wipe()}.
+     * With a standby policy, the standby token acquired ahead of time is taken instead of requesting one,
+     * and the next standby token is scheduled to be acquired before the next renewal.
      * Scheduling cycle only ends under two conditions:
      * 1. TokenManager is stopped
-     * 2. Token renewal fails for max number of retries 
+     * 2. Token renewal fails for max number of retries, with a permanent failure, or past its deadline
      * @return
      */
     protected Token renewToken() {
@@ -65,25 +180,220 @@ public class TokenManager {
             return null;
         }
         Token newToken = null;
+        if (numberOfRetries.get() == 0) {
+            renewalStartedAt = clock.millis();
+        }
+        renewing = true;
+        wipeExpiredTokens();
         try {
-            currentToken = newToken = dispatcher.requestTokenAsync().getResult();
+            newToken = takeStandbyToken();
+            // the standby token request is recorded on its own
+            int attempts = numberOfRetries.get() + (newToken != null ? 0 : 1);
+            if (newToken == null) {
+                newToken = dispatcher
+                        .requestTokenAsync(nextAttemptTimeout(), currentToken != null).getResult();
+            }
+            Token superseded = currentToken;
+            long completedAt = clock.millis();
+            history.add(new RenewalRecord(renewalStartedAt, completedAt, attempts, true,
+                    newToken.getExpiresAt() - newToken.getReceivedAt(),
+                    superseded == null ? Long.MAX_VALUE
+                            : superseded.getExpiresAt() - completedAt));
+            numberOfRetries.set(0);
+            consecutiveFailures.set(0);
+            lastSuccessAt = completedAt;
             long delay = calculateRenewalDelay(newToken.getExpiresAt(), newToken.getReceivedAt());
-            renewalScheduler.scheduleNext(delay);
+            scheduleRenewal(delay);
+            scheduleStandbyToken(delay);
+            if (isSameToken(superseded, newToken)) {
+                if (superseded != newToken) {
+                    newToken.wipe();
+                }
+                listener.onTokenUnchanged(superseded);
+                return superseded;
+            }
+            currentToken = newToken;
+            publisher.publish(newToken);
             listener.onTokenRenewed(newToken);
+            if (superseded != null && superseded != newToken) {
+                // nothing hands out the old one any more, but its holders may still use it
+                retiredTokens.add(superseded);
+                if (stopped) {
+                    wipeRetiredTokens();
+                }
+            }
             return newToken;
         } catch (Exception e) {
-            if (numberOfRetries.getAndIncrement() < maxRetries) {
-                renewalScheduler.scheduleNext(retryDelay);
+            IdentityProviderException classified = IdentityProviderException.find(e);
+            Classification classification = classified == null ? Classification.TRANSIENT
+                    : classified.getClassification();
+            long delay = classification == Classification.THROTTLED
+                    ? Math.max(retryDelay, classified.getRetryAfterInMs())
+                    : retryDelay;
+            long elapsed = clock.millis() - renewalStartedAt;
+            consecutiveFailures.incrementAndGet();
+            if (classification != Classification.PERMANENT && numberOfRetries.get() < maxRetries
+                    && (renewalDeadline <= 0 || elapsed + delay < renewalDeadline)) {
+                numberOfRetries.incrementAndGet();
+                scheduleRenewal(delay);
             } else {
-                RuntimeException propogateExc = prepareToPropogate(e);
+                failed = true;
+                nextRenewalAt = 0;
+                RuntimeException propogateExc = prepareToPropogate(e, elapsed,
+                    numberOfRetries.get() + 1);
+                history.add(new RenewalRecord(renewalStartedAt, renewalStartedAt + elapsed,
+                        numberOfRetries.get() + 1, false, 0, Long.MAX_VALUE));
                 listener.onError(propogateExc);
+                publisher.fail(propogateExc);
                 throw propogateExc;
             }
+        } finally {
+            renewing = false;
         }
         return null;
     }
 
+    private RenewalTask scheduleRenewal(long delay) {
+        nextRenewalAt = clock.millis() + delay;
+        return renewalScheduler.scheduleNext(delay);
+    }
+
+    /**
+     * Returns true if the given token has the value and expiration of the current one
+     * @param current
+     * @param received
+     * @return
+     */
+    private static boolean isSameToken(Token current, Token received) {
+        if (current == null) {
+            return false;
+        }
+        if (current == received) {
+            return true;
+        }
+        return current.getExpiresAt() == received.getExpiresAt()
+                && current.getValueBytes().equals(received.getValueBytes());
+    }
+
+    /**
+     * Returns the standby token if it is still good to be renewed later, null otherwise
+     * @return
+     */
+    private Token takeStandbyToken() {
+        Token standby = standbyToken.getAndSet(null);
+        if (standby == null) {
+            return null;
+        }
+        if (calculateRenewalDelay(standby.getExpiresAt(), standby.getReceivedAt()) <= 0) {
+            standby.wipe();
+            return null;
+        }
+        return standby;
+    }
+
+    /**
+     * Schedules acquiring the standby token, at the configured ratio of the time to the next renewal
+     * and a random jitter earlier
+     * @param renewalDelay
+     */
+    private void scheduleStandbyToken(long renewalDelay) {
+        TokenManagerConfig.StandbyPolicy standbyPolicy = tokenManagerConfig.getStandbyPolicy();
+        if (standbyPolicy == null || renewalDelay <= 0) {
+            return;
+        }
+        long jitter = standbyPolicy.getJitterInMs() > 0
+                ? ThreadLocalRandom.current().nextLong(standbyPolicy.getJitterInMs())
+                : 0;
+        long delay = (long) (renewalDelay * standbyPolicy.getRefillRatio()) - jitter;
+        renewalScheduler.scheduleAside(this::acquireStandbyToken, Math.max(0, delay));
+    }
+
+    /**
+     * Acquires the standby token on its own low priority executor, without blocking the scheduler the
+     * renewals run on or taking a thread their requests need. A failure is not retried, the renewal requests the token itself then. A request
+     * still pending from the previous cycle is cancelled.
+     */
+    private void acquireStandbyToken() {
+        if (stopped) {
+            return;
+        }
+        Future<?> pending = standbyRequest;
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        try {
+            long requestedAt = clock.millis();
+            standbyRequest = dispatcher.requestStandbyTokenAsync(
+                (token, failure) -> onStandbyToken(token, requestedAt));
+        } catch (RejectedExecutionException e) {
+            // stopped meanwhile
+        }
+    }
+
+    private void onStandbyToken(Token token, long requestedAt) {
+        history.add(new RenewalRecord(requestedAt, clock.millis(), 1, token != null,
+                token != null ? token.getExpiresAt() - token.getReceivedAt() : 0, Long.MAX_VALUE,
+                true));
+        if (token == null) {
+            return;
+        }
+        Token replaced = standbyToken.getAndSet(token);
+        if (replaced != null && replaced != token) {
+            replaced.wipe();
+        }
+        if (stopped) {
+            // stop() may have looked for the standby token before it was set
+            wipeStandbyToken();
+        }
+    }
+
+    private void wipeExpiredTokens() {
+        long now = clock.millis();
+        for (Iterator<Token> tokens = retiredTokens.iterator(); tokens.hasNext();) {
+            Token token = tokens.next();
+            if (token.getExpiresAt() <= now) {
+                tokens.remove();
+                token.wipe();
+            }
+        }
+    }
+
+    private void wipeRetiredTokens() {
+        for (Token retired; (retired = retiredTokens.poll()) != null;) {
+            retired.wipe();
+        }
+    }
+
+    private void wipeStandbyToken() {
+        Token standby = standbyToken.getAndSet(null);
+        if (standby != null) {
+            // it was never handed out
+            standby.wipe();
+        }
+    }
+
+    /**
+     * Returns the timeout of the next attempt, which is cut short by the renewal deadline if there is one
+     * @return
+     * @throws TimeoutException if the deadline has already passed
+     */
+    private long nextAttemptTimeout() throws TimeoutException {
+        long timeout = tokenManagerConfig.getTokenRequestExecTimeoutInMs();
+        if (renewalDeadline <= 0) {
+            return timeout;
+        }
+        long remaining = renewalDeadline - (clock.millis() - renewalStartedAt);
+        if (remaining <= 0) {
+            throw new TimeoutException("Renewal deadline exceeded!");
+        }
+        return Math.min(timeout, remaining);
+    }
+
     private RuntimeException prepareToPropogate(Exception e) {
+        return prepareToPropogate(e, 0, 0);
+    }
+
+    private RuntimeException prepareToPropogate(Exception e, long elapsedInMs, int attempts) {
         Throwable unwrapped = e;
         if (unwrapped instanceof ExecutionException) {
             unwrapped = e.getCause();
@@ -91,7 +401,59 @@ public class TokenManager {
         if (unwrapped instanceof TokenRequestException) {
             return (RuntimeException) unwrapped;
         }
-        return new TokenRequestException(unwrapped, dispatcher.getError());
+        return new TokenRequestException(unwrapped, dispatcher.getError(), elapsedInMs, attempts);
+    }
+
+    /**
+     * Returns the publisher of the tokens of this token manager, an alternative to the listener for
+     * clients that compose re-authentication in a reactive pipeline. It replays the latest token to new
+     * subscribers, keeps only the latest token for subscribers without demand, completes when this
+     * token manager is stopped and fails with the failure the listener is notified of.
+     * See {@link TokenPublisher}.
+     * @return
+     */
+    public TokenPublisher tokens() {
+        return publisher;
+    }
+
+    /**
+     * Returns the records of the last renewals, with their token lifetimes, acquisition times and
+     * margins to the expiration of the renewed token, and of the standby token requests, to tune the
+     * renewal settings with, see {@link RenewalHistory#getStats()}.
+     * @return
+     */
+    public RenewalHistory getRenewalHistory() {
+        return history;
+    }
+
+    /**
+     * Returns a snapshot of the health of this token manager, e.g. for a readiness probe, see
+     * {@link TokenHealthEndpoint}. It only reads the state the renewal keeps, without locking, so it
+     * can be polled at any rate.
+     * @return
+     */
+    public TokenHealth health() {
+        long now = clock.millis();
+        Token token = currentToken;
+        long lastSuccess = lastSuccessAt;
+        int failures = consecutiveFailures.get();
+        long ttl = token == null ? 0 : Math.max(0, token.getExpiresAt() - now);
+        TokenHealth.State state;
+        if (stopped) {
+            state = TokenHealth.State.STOPPED;
+        } else if (failed || (token != null && ttl == 0)) {
+            state = TokenHealth.State.FAILED;
+        } else if (token == null) {
+            state = TokenHealth.State.STARTING;
+        } else if (failures > 0) {
+            state = TokenHealth.State.DEGRADED;
+        } else if (renewing) {
+            state = TokenHealth.State.RENEWING;
+        } else {
+            state = TokenHealth.State.HEALTHY;
+        }
+        return new TokenHealth(state, ttl, lastSuccess < 0 ? -1 : now - lastSuccess, failures,
+                stopped ? 0 : nextRenewalAt);
     }
 
     public TokenManagerConfig getConfig() {
@@ -106,6 +468,13 @@ public class TokenManager {
         stopped = true;
         renewalScheduler.stop();
         dispatcher.stop();
+        publisher.complete();
+        Future<?> pending = standbyRequest;
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        wipeStandbyToken();
+        wipeRetiredTokens();
     }
 
     /**    
@@ -138,7 +507,7 @@ public class TokenManager {
      */
     protected long ttlForLowerRefresh(long expireDate) {
         long startOfRenewalZone = expireDate - tokenManagerConfig.getLowerRefreshBoundMillis();
-        return startOfRenewalZone - System.currentTimeMillis(); // TTL to renewal zone
+        return startOfRenewalZone - clock.millis(); // TTL to renewal zone
     }
 
     /**
@@ -158,6 +527,6 @@ public class TokenManager {
         long intendedUsageDuration = (long) (totalLifetime
                 * tokenManagerConfig.getExpirationRefreshRatio());
         long startOfRenewalZone = issueDate + intendedUsageDuration;
-        return startOfRenewalZone - System.currentTimeMillis(); // TTL to renewal zone
+        return startOfRenewalZone - clock.millis(); // TTL to renewal zone
     }
 }
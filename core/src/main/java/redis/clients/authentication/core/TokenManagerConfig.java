@@ -15,14 +15,22 @@ public class TokenManagerConfig {
     private final int lowerRefreshBoundMillis;
     private final int tokenRequestExecTimeoutInMs;
     private final RetryPolicy retryPolicy;
+    private final StandbyPolicy standbyPolicy;
+    private final int renewalCoalescingWindowInMs;
 
     public static class RetryPolicy {
         private final int maxAttempts;
         private final int delayInMs;
+        private final int deadlineInMs;
 
         public RetryPolicy(int maxAttempts, int delayInMs) {
+            this(maxAttempts, delayInMs, 0);
+        }
+
+        public RetryPolicy(int maxAttempts, int delayInMs, int deadlineInMs) {
             this.maxAttempts = maxAttempts;
             this.delayInMs = delayInMs;
+            this.deadlineInMs = deadlineInMs;
         }
 
         public int getMaxAttempts() {
@@ -33,14 +41,70 @@ public class TokenManagerConfig {
             return delayInMs;
         }
 
+        /**
+         * Represents the total time in milliseconds one renewal, with all its attempts and the delays
+         * between them, may take. Attempts time out earlier as it runs out and no retry is scheduled
+         * that could not complete within it.
+         * If set to 0 there is no such deadline, only the attempt count and the timeout of each attempt.
+         */
+        public int getDeadlineInMs() {
+            return deadlineInMs;
+        }
+
+    }
+
+    /**
+     * Policy of acquiring the next token ahead of the renewal, so that the renewal itself only swaps it in.
+     */
+    public static class StandbyPolicy {
+        private final float refillRatio;
+        private final int jitterInMs;
+
+        public StandbyPolicy(float refillRatio, int jitterInMs) {
+            this.refillRatio = refillRatio;
+            this.jitterInMs = jitterInMs;
+        }
+
+        /**
+         * Represents the ratio of the time to the next renewal at which the standby token is acquired.
+         * For example, a value of 0.8 acquires it when 80% of the time from receiving the current token
+         * to its renewal has elapsed.
+         */
+        public float getRefillRatio() {
+            return refillRatio;
+        }
+
+        /**
+         * Represents the maximum random time in milliseconds the standby token is acquired earlier,
+         * to spread the requests of many token managers.
+         */
+        public int getJitterInMs() {
+            return jitterInMs;
+        }
     }
 
     public TokenManagerConfig(float expirationRefreshRatio, int lowerRefreshBoundMillis,
             int tokenRequestExecTimeoutInMs, RetryPolicy retryPolicy) {
+        this(expirationRefreshRatio, lowerRefreshBoundMillis, tokenRequestExecTimeoutInMs,
+                retryPolicy, null);
+    }
+
+    public TokenManagerConfig(float expirationRefreshRatio, int lowerRefreshBoundMillis,
+            int tokenRequestExecTimeoutInMs, RetryPolicy retryPolicy,
+            StandbyPolicy standbyPolicy) {
+        this(expirationRefreshRatio, lowerRefreshBoundMillis, tokenRequestExecTimeoutInMs,
+                retryPolicy, standbyPolicy, 0);
+    }
+
+    public TokenManagerConfig(float expirationRefreshRatio, int lowerRefreshBoundMillis,
+            int tokenRequestExecTimeoutInMs, RetryPolicy retryPolicy,
+            StandbyPolicy standbyPolicy, int renewalCoalescingWindowInMs) {
+        this.renewalCoalescingWindowInMs = renewalCoalescingWindowInMs;
         this.expirationRefreshRatio = expirationRefreshRatio;
         this.lowerRefreshBoundMillis = lowerRefreshBoundMillis;
         this.tokenRequestExecTimeoutInMs = tokenRequestExecTimeoutInMs;
         this.retryPolicy = retryPolicy;
+        this.standbyPolicy = standbyPolicy;
     }
 
     /**
@@ -75,4 +139,23 @@ public class TokenManagerConfig {
     public RetryPolicy getRetryPolicy() {
         return retryPolicy;
     }
+
+    /**
+     * Represents the policy of acquiring a standby token ahead of each renewal, null if the token is
+     * acquired when the renewal is due.
+     */
+    public StandbyPolicy getStandbyPolicy() {
+        return standbyPolicy;
+    }
+
+    /**
+     * Represents the length in milliseconds of the window in which the renewals due across all the token
+     * managers of the process are batched, to wake up once for all of them and hand them to their token
+     * managers together. Renewals run at most this much earlier, never later, and the requests of a
+     * batch are sent together. Renewals due sooner than that, e.g. retries, are not batched.
+     * If set to 0 each renewal is scheduled on its own.
+     */
+    public int getRenewalCoalescingWindowInMs() {
+        return renewalCoalescingWindowInMs;
+    }
 }
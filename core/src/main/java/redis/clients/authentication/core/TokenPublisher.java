@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the tokens of a {@link TokenManager}, see {@link TokenManager#tokens()}.
+ * <p>
+ * It follows the Reactive Streams contract, with interfaces of the same shape, so it can be adapted to
+ * a {@code org.reactivestreams.Publisher} by delegating the four subscriber and two subscription
+ * methods:
+ * <ul>
+ * <li>A new subscriber receives the latest token once it requests one, then every renewed token.</li>
+ * <li>A subscriber without demand is not queued tokens for, it receives only the latest one once it
+ * requests again.</li>
+ * <li>It completes when the token manager is stopped, and fails when a renewal failed for good, without
+ * waiting for demand. A subscriber that subscribes after that is only told so.</li>
+ * </ul>
+ * Tokens are delivered on the thread that renews them or on the thread that requests them, whichever
+ * makes them deliverable, and never concurrently to the same subscriber.
+ */
+public final class TokenPublisher {
+
+    public interface Subscriber {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(Token token);
+
+        void onError(Throwable failure);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+
+        /**
+         * Requests the given number of tokens, of which only the latest is kept while there is no
+         * demand
+         * @param n
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final CopyOnWriteArrayList<TokenSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong versions = new AtomicLong();
+    private volatile Published latest;
+    private volatile boolean terminated;
+    private volatile Throwable failure;
+
+    TokenPublisher() {
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null!");
+        }
+        TokenSubscription subscription = new TokenSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        // a token published meanwhile was offered already, the replay never replaces it
+        subscription.offer(terminated ? null : latest);
+    }
+
+    void publish(Token token) {
+        Published published = new Published(token, versions.incrementAndGet());
+        latest = published;
+        for (TokenSubscription subscription : subscriptions) {
+            subscription.offer(published);
+        }
+    }
+
+    void complete() {
+        terminate(null);
+    }
+
+    void fail(Throwable failure) {
+        terminate(failure);
+    }
+
+    private void terminate(Throwable failure) {
+        if (terminated) {
+            return;
+        }
+        this.failure = failure;
+        terminated = true;
+        for (TokenSubscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    private static final class Published {
+        private final Token token;
+        private final long version;
+
+        private Published(Token token, long version) {
+            this.token = token;
+            this.version = version;
+        }
+    }
+
+    private final class TokenSubscription implements Subscription {
+        private final Subscriber subscriber;
+        private final AtomicReference<Published> pending = new AtomicReference<>();
+        // only accessed within drain
+        private long deliveredVersion;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        private TokenSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(
+                        "Number of requested tokens must be positive!");
+            } else {
+                long current;
+                do {
+                    current = requested.get();
+                } while (!requested.compareAndSet(current,
+                    current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Makes the given token the pending one, unless a newer one is pending already
+         * @param published
+         */
+        private void offer(Published published) {
+            if (published != null) {
+                Published current;
+                do {
+                    current = pending.get();
+                    if (current != null && current.version >= published.version) {
+                        break;
+                    }
+                } while (!pending.compareAndSet(current, published));
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (cancelled) {
+                    return;
+                }
+                if (invalidRequest != null) {
+                    cancel();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                if (requested.get() > 0) {
+                    Published published = pending.getAndSet(null);
+                    // one offered after a newer one was taken is not delivered
+                    if (published != null && published.version > deliveredVersion) {
+                        deliveredVersion = published.version;
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        subscriber.onNext(published.token);
+                    }
+                }
+                if (terminated) {
+                    cancel();
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -10,21 +10,71 @@ public class TokenRequestException extends AuthXException {
 
     private static final String msg = "Token request/renewal failed!";
     private final Exception identityProviderFailedWith;
+    private final long elapsedInMs;
+    private final int attempts;
 
     public TokenRequestException(Throwable cause, Exception identityProviderFailedWith) {
-        super(getMessage(identityProviderFailedWith), cause);
+        this(cause, identityProviderFailedWith, 0, 0);
+    }
+
+    public TokenRequestException(Throwable cause, Exception identityProviderFailedWith,
+            long elapsedInMs, int attempts) {
+        super(getMessage(identityProviderFailedWith, elapsedInMs, attempts), cause);
         this.identityProviderFailedWith = identityProviderFailedWith;
+        this.elapsedInMs = elapsedInMs;
+        this.attempts = attempts;
     }
 
     public Exception getIdentityProviderFailedWith() {
         return identityProviderFailedWith;
     }
 
-    private static String getMessage(Exception identityProviderFailedWith) {
+    /**
+     * Returns the time in milliseconds the failed renewal took with all its attempts, 0 if not known.
+     */
+    public long getElapsedInMs() {
+        return elapsedInMs;
+    }
+
+    /**
+     * Returns the number of attempts the failed renewal made, 0 if not known.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns how the identity provider classified the failure, TRANSIENT if it did not.
+     */
+    public IdentityProviderException.Classification getClassification() {
+        IdentityProviderException classified = findClassified();
+        return classified == null ? IdentityProviderException.Classification.TRANSIENT
+                : classified.getClassification();
+    }
+
+    /**
+     * Returns the delay in milliseconds the identity provider asked for before retrying, 0 if none.
+     */
+    public long getRetryAfterInMs() {
+        IdentityProviderException classified = findClassified();
+        return classified == null ? 0 : classified.getRetryAfterInMs();
+    }
+
+    private IdentityProviderException findClassified() {
+        IdentityProviderException classified = IdentityProviderException.find(getCause());
+        return classified != null ? classified
+                : IdentityProviderException.find(identityProviderFailedWith);
+    }
+
+    private static String getMessage(Exception identityProviderFailedWith, long elapsedInMs,
+            int attempts) {
+        String message = attempts > 0
+                ? msg + " Gave up after " + attempts + " attempts in " + elapsedInMs + " ms."
+                : msg;
         if (identityProviderFailedWith == null) {
-            return msg;
+            return message;
         }
-        return msg + " Identity provider request failed!"
+        return message + " Identity provider request failed!"
                 + identityProviderFailedWith.getMessage();
     }
 
@@ -8,32 +8,67 @@ package redis.clients.authentication;
 
 import static org.mockito.Mockito.when;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.either;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import redis.clients.authentication.core.AuthXException;
+import redis.clients.authentication.core.FailoverIdentityProvider;
 import redis.clients.authentication.core.IdentityProvider;
+import redis.clients.authentication.core.IdentityProviderException;
+import redis.clients.authentication.core.IdentityProviderException.Classification;
+import redis.clients.authentication.core.OffHeapToken;
+import redis.clients.authentication.core.RenewalHistory;
+import redis.clients.authentication.core.RenewalRecord;
+import redis.clients.authentication.core.RenewalStats;
 import redis.clients.authentication.core.SimpleToken;
 import redis.clients.authentication.core.Token;
+import redis.clients.authentication.core.TokenClaims;
+import redis.clients.authentication.core.TokenHealth;
+import redis.clients.authentication.core.TokenHealthEndpoint;
 import redis.clients.authentication.core.TokenListener;
 import redis.clients.authentication.core.TokenManager;
 import redis.clients.authentication.core.TokenManagerConfig;
 import redis.clients.authentication.core.TokenManagerConfig.RetryPolicy;
+import redis.clients.authentication.core.TokenPublisher;
 import redis.clients.authentication.core.TokenRequestException;
 
 import static org.awaitility.Awaitility.await;
@@ -192,7 +227,8 @@ public class CoreAuthenticationUnitTests {
     tokenManager.start(listener, false);
 
     requesLatch.await();
-    verify(listener, atLeastOnce()).onError(any());
+    // the last attempt counts down before its failure reaches the listener
+    verify(listener, timeout(1000).atLeastOnce()).onError(any());
     verify(listener, never()).onTokenRenewed(any());
   }
 
@@ -220,9 +256,10 @@ public class CoreAuthenticationUnitTests {
     TokenListener listener = mock(TokenListener.class);
     tokenManager.start(listener, false);
     requesLatch.await();
+    // the last attempt counts down before its token reaches the listener
+    verify(listener, timeout(1000)).onTokenRenewed(argument.capture());
     verify(identityProvider, times(numberOfRetries)).requestToken();
     verify(listener, never()).onError(any());
-    verify(listener).onTokenRenewed(argument.capture());
     assertEquals("tokenValX", argument.getValue().getValue());
   }
 
@@ -256,6 +293,647 @@ public class CoreAuthenticationUnitTests {
     });
   }
 
+  @Test
+  public void testFailoverSkipsFailedProvider() {
+    AtomicInteger primaryRequests = new AtomicInteger();
+    IdentityProvider primary = () -> {
+      primaryRequests.incrementAndGet();
+      throw new IdentityProviderException("IMDS unreachable!", null);
+    };
+    IdentityProvider secondary = () -> new SimpleToken("user1", "secondary",
+        System.currentTimeMillis() + 50 * 1000, System.currentTimeMillis(), null);
+    FailoverIdentityProvider failover = new FailoverIdentityProvider(
+        Arrays.asList(primary, secondary), 60 * 1000, false);
+
+    assertEquals("secondary", failover.requestToken().getValue());
+    assertEquals("secondary", failover.requestToken().getValue());
+
+    // the failed provider cools down instead of being tried on each request
+    assertEquals(1, primaryRequests.get());
+    assertSame(secondary, failover.getPreferred());
+  }
+
+  @Test
+  public void testFailoverRacingTakesFastestToken() {
+    IdentityProvider slow = () -> {
+      try {
+        Thread.sleep(2000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new IdentityProviderException("IMDS timed out!", null);
+    };
+    IdentityProvider fast = () -> new SimpleToken("user1", "fast",
+        System.currentTimeMillis() + 50 * 1000, System.currentTimeMillis(), null);
+    FailoverIdentityProvider failover = new FailoverIdentityProvider(Arrays.asList(slow, fast),
+        60 * 1000, true);
+
+    long startedAt = System.currentTimeMillis();
+    assertEquals("fast", failover.requestToken().getValue());
+    assertTrue(System.currentTimeMillis() - startedAt < 1000);
+    assertSame(fast, failover.getPreferred());
+  }
+
+  @Test
+  public void testFailoverFailsWithClassificationOfAll() {
+    IdentityProvider denied = () -> {
+      throw new IdentityProviderException("Invalid client secret!", null,
+          Classification.PERMANENT, 0);
+    };
+    IdentityProvider throttled = () -> {
+      throw new IdentityProviderException("Too many requests!", null, Classification.THROTTLED,
+          500);
+    };
+    FailoverIdentityProvider failover = new FailoverIdentityProvider(
+        Arrays.asList(denied, throttled), 60 * 1000, false);
+
+    IdentityProviderException e = assertThrows(IdentityProviderException.class,
+      failover::requestToken);
+    assertEquals(Classification.THROTTLED, e.getClassification());
+    assertEquals(500, e.getRetryAfterInMs());
+    assertEquals(1, e.getSuppressed().length);
+  }
+
+  @Test
+  public void testSupersededOffHeapTokenIsWiped() {
+    List<OffHeapToken> tokens = new CopyOnWriteArrayList<>();
+    IdentityProvider identityProvider = () -> {
+      OffHeapToken token = new OffHeapToken("user1",
+          ("tokenVal" + tokens.size()).getBytes(StandardCharsets.UTF_8),
+          System.currentTimeMillis() + 1000, System.currentTimeMillis(),
+          (key, clazz) -> null);
+      tokens.add(token);
+      return token;
+    };
+
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 100, 1000, new TokenManagerConfig.RetryPolicy(1, 1)));
+    tokenManager.start(mock(TokenListener.class), true);
+    assertEquals("tokenVal0", tokens.get(0).getValue());
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> tokens.size() >= 2);
+    // its holders may still authenticate with the renewed token until it expires
+    assertFalse(tokens.get(0).isWiped());
+    await().atMost(3, TimeUnit.SECONDS).until(() -> tokens.get(0).isWiped());
+    assertThat(System.currentTimeMillis(),
+        Matchers.greaterThanOrEqualTo(tokens.get(0).getExpiresAt()));
+    tokenManager.stop();
+
+    assertThrows(AuthXException.class, () -> tokens.get(0).getValue());
+    // once stopped, the renewed tokens are wiped, the token in use is left as it is
+    Token current = tokenManager.getCurrentToken();
+    for (OffHeapToken token : tokens) {
+      assertEquals(token != current, token.isWiped());
+    }
+    assertEquals(current.getValue().length(), current.getValueBytes().remaining());
+  }
+
+  @Test
+  public void testFailoverRacingWipesTokenOfLoser() {
+    List<OffHeapToken> slowTokens = new CopyOnWriteArrayList<>();
+    IdentityProvider slow = () -> {
+      try {
+        Thread.sleep(300);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      OffHeapToken token = new OffHeapToken("user1", "slow".getBytes(StandardCharsets.UTF_8),
+          System.currentTimeMillis() + 50 * 1000, System.currentTimeMillis(), (key, clazz) -> null);
+      slowTokens.add(token);
+      return token;
+    };
+    IdentityProvider fast = () -> new SimpleToken("user1", "fast",
+        System.currentTimeMillis() + 50 * 1000, System.currentTimeMillis(), null);
+    FailoverIdentityProvider failover = new FailoverIdentityProvider(Arrays.asList(slow, fast),
+        60 * 1000, true);
+
+    assertEquals("fast", failover.requestToken().getValue());
+    // nothing hands out the token of the slower provider
+    await().atMost(2, TimeUnit.SECONDS).until(() -> slowTokens.size() == 1);
+    await().atMost(1, TimeUnit.SECONDS).until(() -> slowTokens.get(0).isWiped());
+  }
+
+  @Test
+  public void testStandbyTokenDoesNotBlockRenewals() {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger renewals = new AtomicInteger();
+    List<OffHeapToken> standby = new CopyOnWriteArrayList<>();
+    IdentityProvider identityProvider = new IdentityProvider() {
+      @Override
+      public Token requestToken() {
+        return new OffHeapToken("user1", "tokenVal".getBytes(StandardCharsets.UTF_8),
+            System.currentTimeMillis() + 1000, System.currentTimeMillis(), (key, clazz) -> null);
+      }
+
+      @Override
+      public Token renewToken() {
+        if (renewals.getAndIncrement() > 0) {
+          return requestToken();
+        }
+        // the first standby request hangs until it is released
+        while (true) {
+          try {
+            release.await();
+            break;
+          } catch (InterruptedException e) {
+            // it ignores being cancelled
+          }
+        }
+        OffHeapToken token = (OffHeapToken) requestToken();
+        standby.add(token);
+        return token;
+      }
+    };
+    TokenListener listener = mock(TokenListener.class);
+    TokenManager tokenManager = new TokenManager(identityProvider, new TokenManagerConfig(0.5F, 0,
+        5000, new TokenManagerConfig.RetryPolicy(1, 1), new TokenManagerConfig.StandbyPolicy(0.5F, 0)));
+    tokenManager.start(listener, true);
+
+    // the renewal runs while the standby request still hangs
+    verify(listener, timeout(2000).times(2)).onTokenRenewed(any());
+    assertTrue(standby.isEmpty());
+
+    // the standby token it receives once stopped is never handed out
+    tokenManager.stop();
+    release.countDown();
+    await().atMost(1, TimeUnit.SECONDS).until(() -> standby.size() == 1);
+    await().atMost(1, TimeUnit.SECONDS).until(() -> standby.get(0).isWiped());
+  }
+
+  @Test
+  public void testStandbyTokenIsRequestedOnItsOwnExecutor() {
+    List<String> standbyThreads = new CopyOnWriteArrayList<>();
+    IdentityProvider identityProvider = new IdentityProvider() {
+      @Override
+      public Token requestToken() {
+        return new SimpleToken("user1", "tokenVal", System.currentTimeMillis() + 400,
+            System.currentTimeMillis(), null);
+      }
+
+      @Override
+      public Token renewToken() {
+        if (Thread.currentThread().getName().equals("authx-standby-token")) {
+          standbyThreads.add(Thread.currentThread().getName());
+          throw new RuntimeException("Standby token request failed!");
+        }
+        return requestToken();
+      }
+    };
+    TokenListener listener = mock(TokenListener.class);
+    TokenManager tokenManager = new TokenManager(identityProvider, new TokenManagerConfig(0.5F, 0,
+        1000, new TokenManagerConfig.RetryPolicy(1, 1), new TokenManagerConfig.StandbyPolicy(0.5F, 0)));
+    tokenManager.start(listener, true);
+
+    // the failing standby requests run aside, the renewals request their tokens themselves
+    verify(listener, timeout(2000).atLeast(3)).onTokenRenewed(any());
+    tokenManager.stop();
+    assertFalse(standbyThreads.isEmpty());
+    verify(listener, never()).onError(any());
+  }
+
+  @Test
+  public void testPermanentFailureIsNotRetried() {
+    AtomicInteger requests = new AtomicInteger();
+    IdentityProvider identityProvider = () -> {
+      requests.incrementAndGet();
+      throw new IdentityProviderException("Invalid client secret!", null,
+          Classification.PERMANENT, 0);
+    };
+
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.7F, 200, 2000, new TokenManagerConfig.RetryPolicy(5, 100)));
+
+    TokenRequestException e = assertThrows(TokenRequestException.class,
+      () -> tokenManager.start(mock(TokenListener.class), true));
+
+    assertEquals(Classification.PERMANENT, e.getClassification());
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  public void testRetriesStopAtRenewalDeadline() {
+    AtomicInteger requests = new AtomicInteger();
+    IdentityProvider identityProvider = () -> {
+      requests.incrementAndGet();
+      try {
+        Thread.sleep(300);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new IdentityProviderException("Service unavailable!", null,
+          Classification.TRANSIENT, 0);
+    };
+
+    TokenManager tokenManager = new TokenManager(identityProvider, new TokenManagerConfig(0.7F,
+        200, 2000, new TokenManagerConfig.RetryPolicy(10, 100, 1000)));
+
+    long startedAt = System.currentTimeMillis();
+    TokenRequestException e = assertThrows(TokenRequestException.class,
+      () -> tokenManager.start(mock(TokenListener.class), true));
+    long took = System.currentTimeMillis() - startedAt;
+
+    // the third attempt is cut short by the deadline instead of running for the full 2000 ms
+    assertTrue("took " + took + " ms", took < 1500);
+    assertEquals(3, e.getAttempts());
+    assertEquals(3, requests.get());
+    assertTrue(e.getElapsedInMs() >= 1000 && e.getElapsedInMs() < 1500);
+    assertTrue(e.getMessage().contains("3 attempts"));
+  }
+
+  @Test
+  public void testThrottledRequestWaitsForRetryAfter() {
+    int retryAfter = 500;
+    AtomicLong firstRequestAt = new AtomicLong();
+    IdentityProvider identityProvider = () -> {
+      if (firstRequestAt.compareAndSet(0, System.currentTimeMillis())) {
+        throw new IdentityProviderException("Too many requests!", null, Classification.THROTTLED,
+            retryAfter);
+      }
+      return new SimpleToken("user1", "tokenVal", System.currentTimeMillis() + 50 * 1000,
+          System.currentTimeMillis(), null);
+    };
+
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.7F, 200, 2000, new TokenManagerConfig.RetryPolicy(5, 10)));
+
+    tokenManager.start(mock(TokenListener.class), true);
+    long waited = tokenManager.getCurrentToken().getReceivedAt() - firstRequestAt.get();
+    assertThat(waited, Matchers.greaterThanOrEqualTo((long) retryAfter));
+  }
+
+  @Test
+  public void testIdenticalTokenDoesNotNotifyRenewal() {
+    long expiresAt = System.currentTimeMillis() + 2000;
+    AtomicInteger requests = new AtomicInteger();
+    IdentityProvider identityProvider = () -> {
+      requests.incrementAndGet();
+      return new SimpleToken("user1", "tokenVal", expiresAt, System.currentTimeMillis(), null);
+    };
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1)));
+    TokenListener listener = mock(TokenListener.class);
+
+    tokenManager.start(listener, true);
+    Token initial = tokenManager.getCurrentToken();
+    await().atMost(5, TimeUnit.SECONDS).until(() -> requests.get() >= 3);
+    tokenManager.stop();
+
+    verify(listener, times(1)).onTokenRenewed(any());
+    verify(listener, atLeastOnce()).onTokenUnchanged(initial);
+    assertSame(initial, tokenManager.getCurrentToken());
+  }
+
+  @Test
+  public void testTokenPublisherReplaysOnlyTheLatestToken() {
+    AtomicInteger counter = new AtomicInteger();
+    IdentityProvider identityProvider = () -> {
+      int n = counter.incrementAndGet();
+      // the third token is the last one renewed during the test
+      long lifetime = n < 3 ? 300 : 60 * 1000;
+      return new SimpleToken("user1", "tokenVal" + n, System.currentTimeMillis() + lifetime,
+          System.currentTimeMillis(), null);
+    };
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1)));
+    List<String> renewed = new CopyOnWriteArrayList<>();
+    TokenListener listener = mock(TokenListener.class);
+    doAnswer(invocation -> renewed.add(((Token) invocation.getArgument(0)).getValue()))
+        .when(listener).onTokenRenewed(any());
+    tokenManager.start(listener, true);
+
+    List<String> received = new CopyOnWriteArrayList<>();
+    AtomicReference<TokenPublisher.Subscription> subscription = new AtomicReference<>();
+    AtomicBoolean completed = new AtomicBoolean();
+    TokenPublisher.Subscriber subscriber = new TokenPublisher.Subscriber() {
+      @Override
+      public void onSubscribe(TokenPublisher.Subscription s) {
+        subscription.set(s);
+        s.request(1);
+      }
+
+      @Override
+      public void onNext(Token token) {
+        received.add(token.getValue());
+      }
+
+      @Override
+      public void onError(Throwable failure) {
+      }
+
+      @Override
+      public void onComplete() {
+        completed.set(true);
+      }
+    };
+    tokenManager.tokens().subscribe(subscriber);
+    assertEquals(Arrays.asList("tokenVal1"), received);
+
+    // without demand the renewed tokens are not queued, only the latest is delivered
+    await().atMost(5, TimeUnit.SECONDS).until(() -> renewed.contains("tokenVal3"));
+    assertEquals(1, received.size());
+    subscription.get().request(10);
+    assertEquals(Arrays.asList("tokenVal1", "tokenVal3"), received);
+
+    tokenManager.stop();
+    assertTrue(completed.get());
+    completed.set(false);
+    tokenManager.tokens().subscribe(subscriber);
+    assertTrue(completed.get());
+    assertEquals(2, received.size());
+  }
+
+  @Test
+  public void testTokenPublisherNeverReplaysAnOlderToken() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    IdentityProvider identityProvider = () -> new SimpleToken("user1",
+        "tokenVal" + counter.incrementAndGet(), System.currentTimeMillis() + 20,
+        System.currentTimeMillis(), null);
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.1F, 0, 1000, new RetryPolicy(1, 1)));
+    tokenManager.start(null, true);
+
+    // subscribers keep subscribing while the tokens are renewed every couple of milliseconds
+    List<String> violations = new CopyOnWriteArrayList<>();
+    ExecutorService subscribers = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 2000; i++) {
+      subscribers.execute(() -> tokenManager.tokens().subscribe(new TokenPublisher.Subscriber() {
+        private int last;
+
+        @Override
+        public void onSubscribe(TokenPublisher.Subscription s) {
+          s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Token token) {
+          int n = Integer.parseInt(token.getValue().substring("tokenVal".length()));
+          if (n <= last) {
+            violations.add(n + " after " + last);
+          }
+          last = n;
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+      }));
+    }
+    subscribers.shutdown();
+    assertTrue(subscribers.awaitTermination(10, TimeUnit.SECONDS));
+    tokenManager.stop();
+
+    assertThat(counter.get(), Matchers.greaterThan(1));
+    assertEquals(Collections.emptyList(), violations);
+  }
+
+  @Test
+  public void testTokenPublisherFailsWithRenewal() {
+    IdentityProvider identityProvider = () -> {
+      throw new IdentityProviderException("Unauthorized!", null, Classification.PERMANENT, 0);
+    };
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1)));
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    tokenManager.tokens().subscribe(new TokenPublisher.Subscriber() {
+      @Override
+      public void onSubscribe(TokenPublisher.Subscription s) {
+        s.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(Token token) {
+      }
+
+      @Override
+      public void onError(Throwable e) {
+        failure.set(e);
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    });
+
+    assertThrows(TokenRequestException.class, () -> tokenManager.start(null, true));
+    assertTrue(failure.get() instanceof TokenRequestException);
+  }
+
+  @Test
+  public void testListenerRunsOnItsExecutor() throws InterruptedException {
+    AtomicInteger requests = new AtomicInteger();
+    IdentityProvider identityProvider = () -> new SimpleToken("user1",
+        "tokenVal" + requests.incrementAndGet(), System.currentTimeMillis() + 200,
+        System.currentTimeMillis(), null);
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1)));
+    ExecutorService eventLoop = Executors
+        .newSingleThreadExecutor(runnable -> new Thread(runnable, "client-event-loop"));
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> threads = new CopyOnWriteArrayList<>();
+    TokenListener listener = mock(TokenListener.class);
+    doAnswer(invocation -> {
+      threads.add(Thread.currentThread().getName());
+      release.await();
+      return null;
+    }).when(listener).onTokenRenewed(any());
+
+    tokenManager.start(listener, eventLoop, true);
+    // the listener is blocked on its event loop, the renewals go on
+    await().atMost(5, TimeUnit.SECONDS).until(() -> requests.get() >= 4);
+    tokenManager.stop();
+    release.countDown();
+    eventLoop.shutdown();
+    eventLoop.awaitTermination(5, TimeUnit.SECONDS);
+
+    assertTrue(threads.stream().allMatch("client-event-loop"::equals));
+    // of the renewals handed off while it was blocked, only the latest one is delivered
+    assertEquals(2, threads.size());
+  }
+
+  @Test
+  public void testRenewalsWithinWindowAreBatched() {
+    int window = 1000;
+    List<Long> renewedAt = new CopyOnWriteArrayList<>();
+    List<Long> dueAt = new CopyOnWriteArrayList<>();
+    List<TokenManager> tokenManagers = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      long lifetime = 2400 + i * 30;
+      AtomicInteger requests = new AtomicInteger();
+      IdentityProvider identityProvider = () -> {
+        long now = System.currentTimeMillis();
+        int request = requests.incrementAndGet();
+        if (request == 1) {
+          dueAt.add(now + lifetime / 2);
+        } else if (request == 2) {
+          renewedAt.add(now);
+        }
+        return new SimpleToken("user1", "tokenVal", now + lifetime, now, null);
+      };
+      TokenManager tokenManager = new TokenManager(identityProvider,
+          new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1), null, window));
+      tokenManager.start(mock(TokenListener.class), true);
+      tokenManagers.add(tokenManager);
+    }
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> renewedAt.size() == 10);
+    tokenManagers.forEach(TokenManager::stop);
+
+    // the renewals ran together at the start of a window, not spread over their deadlines
+    for (long at : renewedAt) {
+      assertThat(at % window, Matchers.lessThan(200L));
+    }
+    assertThat(Collections.max(renewedAt), Matchers.lessThanOrEqualTo(Collections.max(dueAt)));
+  }
+
+  @Test
+  public void testRenewalHistoryKeepsLastRecordsWithStats() {
+    RenewalHistory history = new RenewalHistory(4);
+    long hour = 60 * 60 * 1000;
+    for (int i = 0; i < 6; i++) {
+      long startedAt = i * hour;
+      // tokens live for 90 minutes and are renewed after 60, with 30 minutes left
+      history.add(new RenewalRecord(startedAt, startedAt + 100 + i, 1, true, 90 * 60 * 1000,
+          30 * 60 * 1000 - i));
+    }
+
+    List<RenewalRecord> records = history.getRecords();
+    assertEquals(4, records.size());
+    assertEquals(2 * hour, records.get(0).getStartedAt());
+    assertEquals(6, history.getTotalCount());
+
+    RenewalStats stats = history.getStats();
+    assertEquals(4, stats.getRenewals());
+    assertEquals(30 * 60 * 1000 - 5, stats.getMinMarginInMs());
+    assertEquals(105, stats.getP99AcquisitionTimeInMs());
+    assertEquals(4 * 3600000.0 / (3 * hour + 105), stats.getIdentityProviderCallsPerHour(), 0.001);
+
+    // keeping 5 minutes, the renewal can start 5 minutes and the p99 acquisition time before expiry
+    RenewalStats.Recommendation recommendation = stats.recommend(5 * 60 * 1000);
+    assertEquals(5 * 60 * 1000 + 105, recommendation.getLowerRefreshBoundMillis());
+    assertEquals(0.95F, recommendation.getExpirationRefreshRatio(), 0.001);
+    assertTrue(recommendation.isAchievable());
+    assertTrue(recommendation.getIdentityProviderCallsPerHour() < stats
+        .getIdentityProviderCallsPerHour());
+  }
+
+  @Test
+  public void testRenewalStatsCountStandbyRequests() {
+    RenewalHistory history = new RenewalHistory(8);
+    long lifetime = 60 * 60 * 1000;
+    // a standby token request failed, the renewal requested its token itself
+    history.add(new RenewalRecord(0, 300, 1, false, 0, Long.MAX_VALUE, true));
+    history.add(new RenewalRecord(1000, 1200, 1, true, lifetime, 10000));
+    // the next standby token request succeeded and the renewal took its token
+    history.add(new RenewalRecord(2000, 2500, 1, true, lifetime, Long.MAX_VALUE, true));
+    history.add(new RenewalRecord(3000, 3000, 0, true, lifetime, 20000));
+
+    RenewalStats stats = history.getStats();
+    assertEquals(2, stats.getRenewals());
+    assertEquals(0, stats.getFailures());
+    assertEquals(2, stats.getStandbyRequests());
+    assertEquals(1, stats.getFailedStandbyRequests());
+    assertEquals(3, stats.getIdentityProviderCalls());
+    assertEquals(1.5, stats.getAverageAttempts(), 0.001);
+    // the renewal that took the standby token did not wait, the standby token request did
+    assertEquals(500, stats.getP99AcquisitionTimeInMs());
+    assertEquals(10000, stats.getMinMarginInMs());
+  }
+
+  @Test
+  public void testTokenManagerRecordsRenewals() {
+    IdentityProvider identityProvider = () -> new SimpleToken("user1",
+        "tokenVal" + System.nanoTime(), System.currentTimeMillis() + 400,
+        System.currentTimeMillis(), null);
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.5F, 0, 1000, new RetryPolicy(1, 1)));
+
+    tokenManager.start(mock(TokenListener.class), true);
+    await().atMost(5, TimeUnit.SECONDS)
+        .until(() -> tokenManager.getRenewalHistory().getTotalCount() >= 3);
+    tokenManager.stop();
+
+    RenewalStats stats = tokenManager.getRenewalHistory().getStats();
+    assertEquals(0, stats.getFailures());
+    assertThat(stats.getMinMarginInMs(), Matchers.greaterThan(0L));
+    assertThat(stats.getMinMarginInMs(), Matchers.lessThan(400L));
+    assertEquals(400, stats.getMaxLifetimeInMs(), 5);
+  }
+
+  @Test
+  public void testHealthFollowsRenewalsAndIsServed() throws IOException {
+    AtomicInteger requests = new AtomicInteger();
+    IdentityProvider identityProvider = () -> {
+      if (requests.getAndIncrement() > 0) {
+        throw new RuntimeException("Test exception from identity provider!");
+      }
+      return new SimpleToken("user1", "tokenVal", System.currentTimeMillis() + 60000,
+          System.currentTimeMillis(), null);
+    };
+    TokenManager tokenManager = new TokenManager(identityProvider,
+        new TokenManagerConfig(0.005F, 0, 1000, new RetryPolicy(100, 50)));
+    assertEquals(TokenHealth.State.STARTING, tokenManager.health().getState());
+    assertEquals(-1, tokenManager.health().getTimeSinceLastSuccessInMs());
+
+    try (TokenHealthEndpoint endpoint = TokenHealthEndpoint.start(tokenManager, 0)) {
+      assertTrue(endpoint.getAddress().getAddress().isLoopbackAddress());
+      URL url = new URL("http://localhost:" + endpoint.getAddress().getPort()
+          + TokenHealthEndpoint.DEFAULT_PATH);
+      assertEquals(503, ((HttpURLConnection) url.openConnection()).getResponseCode());
+
+      tokenManager.start(mock(TokenListener.class), true);
+      TokenHealth health = tokenManager.health();
+      assertEquals(TokenHealth.State.HEALTHY, health.getState());
+      assertTrue(health.isReady());
+      assertThat(health.getTtlInMs(), Matchers.greaterThan(59000L));
+      assertEquals(0, health.getConsecutiveFailures());
+      assertThat(health.getNextRenewalAt(), Matchers.greaterThan(System.currentTimeMillis()));
+
+      await().atMost(5, TimeUnit.SECONDS)
+          .until(() -> tokenManager.health().getConsecutiveFailures() >= 2);
+      assertEquals(TokenHealth.State.DEGRADED, tokenManager.health().getState());
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertEquals(200, connection.getResponseCode());
+      try (Scanner body = new Scanner(connection.getInputStream(), "UTF-8")) {
+        assertThat(body.useDelimiter("\\A").next(), containsString("\"state\":\"DEGRADED\""));
+      }
+
+      tokenManager.stop();
+      assertEquals(TokenHealth.State.STOPPED, tokenManager.health().getState());
+      assertEquals(503, ((HttpURLConnection) url.openConnection()).getResponseCode());
+    }
+  }
+
+  @Test
+  public void testTypedClaimsAreReadOnce() {
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("oid", "object-id");
+    claims.put("tid", "tenant-id");
+    claims.put("roles", Arrays.asList("reader", "writer"));
+    claims.put("scp", "read write");
+    claims.put("iat", 1700000000L);
+    Token token = new SimpleToken("user1", "tokenVal", 1700003600000L, 1700000000000L, claims);
+
+    TokenClaims typed = token.getClaims();
+    assertEquals("object-id", typed.getObjectId());
+    assertEquals("tenant-id", typed.getTenantId());
+    assertEquals(null, typed.getAppId());
+    assertEquals(Arrays.asList("reader", "writer"), typed.getRoles());
+    assertEquals(Arrays.asList("read", "write"), typed.getScopes());
+    assertTrue(typed.getAudience().isEmpty());
+    assertEquals(1700000000000L, typed.getIssuedAt());
+    assertEquals(1700003600000L, typed.getExpiresAt());
+    assertSame(typed, token.getClaims());
+    assertThrows(UnsupportedOperationException.class, () -> typed.getRoles().add("admin"));
+
+    Token withoutClaims = new SimpleToken("user1", "tokenVal", 1700003600000L, 1700000000000L,
+        null);
+    assertTrue(withoutClaims.getClaims().getRoles().isEmpty());
+  }
+
   private void delay(long durationInMs) {
     try {
       Thread.sleep(durationInMs);
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.authentication.core.RenewalSimulator.Report;
+
+public class RenewalSimulationTests {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long MINUTE = 60 * 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(RenewalSimulationTests.class);
+
+    private TokenManagerConfig config = new TokenManagerConfig(0.75F, (int) (2 * MINUTE), 1000,
+            new TokenManagerConfig.RetryPolicy(5, 100));
+
+    @Test
+    public void steadyStateAtScaleTest() {
+        RenewalSimulator simulator = new RenewalSimulator().config(config).managers(10_000)
+                .startupSpread(MINUTE);
+        simulator.identityProvider(
+            new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1).uniformLatency(20, 300));
+
+        Report report = simulator.run(24 * HOUR);
+        logger.info("steadyStateAtScaleTest: {}", report);
+
+        assertEquals(0, report.getFailedManagers());
+        assertEquals(0, report.getFailedRequests());
+        // renewals happen at 75% of the token lifetime, leaving 15 minutes minus latency
+        assertThat(report.getMinTtlMarginMillis(), greaterThan(15 * MINUTE - 300));
+        assertThat(report.getRenewals(), greaterThanOrEqualTo(10_000L * 30));
+        assertThat(report.getPeakRequestsPerSecond(), lessThanOrEqualTo(10_000));
+        assertThat(report.getPeakConcurrency(), greaterThan(0));
+    }
+
+    @Test
+    public void failureBurstTest() {
+        RenewalSimulator simulator = new RenewalSimulator().config(config).managers(1_000)
+                .startupSpread(HOUR);
+        simulator.identityProvider(new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1)
+                .fixedLatency(50).failureBurst(5 * HOUR, 5 * HOUR + 10 * MINUTE));
+
+        Report report = simulator.run(8 * HOUR);
+        logger.info("failureBurstTest: {}", report);
+
+        // a ten minutes outage outlasts the retry policy of any manager renewing within it
+        assertThat(report.getFailedRequests(), greaterThan(0));
+        assertThat(report.getFailedManagers(), greaterThan(0));
+        // but only the managers renewing within it
+        assertThat(report.getFailedManagers(), lessThan(1_000));
+    }
+
+    @Test
+    public void standbyTokenTest() {
+        TokenManagerConfig standbyConfig = new TokenManagerConfig(0.75F, (int) (2 * MINUTE), 1000,
+                new TokenManagerConfig.RetryPolicy(5, 100),
+                new TokenManagerConfig.StandbyPolicy(0.8F, (int) MINUTE));
+        RenewalSimulator simulator = new RenewalSimulator().config(standbyConfig).managers(1_000)
+                .startupSpread(MINUTE);
+        simulator.identityProvider(
+            new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1).fixedLatency(500));
+
+        Report report = simulator.run(24 * HOUR);
+        logger.info("standbyTokenTest: {}", report);
+
+        // renewals swap in the standby token, none of them waits for the identity provider
+        assertEquals(0, report.getFailedManagers());
+        assertEquals(0, report.getFailedRequests());
+        assertThat(report.getMinTtlMarginMillis(), greaterThanOrEqualTo(15 * MINUTE));
+        assertThat(report.getRenewals(), greaterThanOrEqualTo(1_000L * 30));
+    }
+
+    @Test
+    public void sporadicFailuresTest() {
+        RenewalSimulator simulator = new RenewalSimulator().config(config).managers(1_000)
+                .startupSpread(MINUTE);
+        simulator.identityProvider(new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1)
+                .uniformLatency(20, 300).failureRate(0.05));
+
+        Report report = simulator.run(24 * HOUR);
+        logger.info("sporadicFailuresTest: {}", report);
+
+        // failures are spread over the day, none of the renewals runs out of retries
+        assertThat(report.getFailedRequests(), greaterThan(0));
+        assertThat(report.getFailedRequests(), lessThan(report.getRequests() / 10));
+        assertEquals(0, report.getFailedManagers());
+    }
+
+    @Test
+    public void throttledStartupTest() {
+        RenewalSimulator simulator = new RenewalSimulator().config(config).managers(10_000);
+        simulator.identityProvider(new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1)
+                .logNormalLatency(100, 0.5).throttleAbove(2_000));
+
+        Report report = simulator.run(2 * HOUR);
+        logger.info("throttledStartupTest: {}", report);
+
+        assertThat(report.getThrottledRequests(), greaterThan(0));
+        // every manager got its initial token, each throttled request was retried
+        assertThat(report.getRequests(),
+            greaterThanOrEqualTo(10_000 + report.getThrottledRequests()));
+        assertThat(report.getPeakRequestsPerSecond(), greaterThan(2_000));
+        // retries wait for the next second as asked, so the throttling limit is never overrun for long
+        assertEquals(0, report.getFailedManagers());
+    }
+
+    @Test
+    public void coalescedRenewalsTest() {
+        TokenManagerConfig coalescingConfig = new TokenManagerConfig(0.75F, (int) (2 * MINUTE),
+                1000, new TokenManagerConfig.RetryPolicy(5, 100), null, (int) MINUTE);
+        Report[] reports = new Report[2];
+        TokenManagerConfig[] configs = { config, coalescingConfig };
+        for (int i = 0; i < reports.length; i++) {
+            RenewalSimulator simulator = new RenewalSimulator().config(configs[i]).managers(10_000)
+                    .startupSpread(HOUR);
+            simulator.identityProvider(
+                new ScriptedIdentityProvider(simulator.getClock(), HOUR, 1).fixedLatency(50));
+            reports[i] = simulator.run(24 * HOUR);
+        }
+        logger.info("coalescedRenewalsTest: {} / {}", reports[0], reports[1]);
+
+        assertEquals(0, reports[1].getFailedManagers());
+        assertEquals(0, reports[1].getFailedRequests());
+        // renewals run at most a window earlier, never later
+        assertThat(reports[1].getMinTtlMarginMillis(), greaterThan(15 * MINUTE - 50));
+        assertThat(reports[1].getRenewals(), greaterThanOrEqualTo(reports[0].getRenewals()));
+        // at most one timer wake-up per window after the startup, instead of one per renewal
+        assertThat(reports[1].getExecutedEvents(), lessThan(reports[0].getExecutedEvents() / 4));
+    }
+
+    @Test
+    public void deterministicSimulationTest() {
+        String[] reports = new String[2];
+        for (int i = 0; i < reports.length; i++) {
+            RenewalSimulator simulator = new RenewalSimulator().config(config).managers(100)
+                    .startupSpread(MINUTE).seed(7);
+            simulator.identityProvider(new ScriptedIdentityProvider(simulator.getClock(), HOUR, 7)
+                    .logNormalLatency(100, 1).failureRate(0.01));
+            reports[i] = simulator.run(6 * HOUR).toString().replaceAll(", wallClockMillis=.*", "");
+        }
+        assertEquals(reports[0], reports[1]);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deterministic discrete-event simulation of many token managers sharing one identity provider.
+ * All managers run the real renewal and retry logic of {@link TokenManager} on a
+ * {@link VirtualClock} and a {@link VirtualScheduler}, so a day of renewals for thousands of
+ * managers completes in seconds and the same seed always gives the same result.
+ */
+class RenewalSimulator {
+
+    private final VirtualClock clock = new VirtualClock(0);
+    private final VirtualScheduler scheduler = new VirtualScheduler(clock);
+    private TokenManagerConfig config;
+    private int numberOfManagers = 1;
+    private long startupSpreadMillis;
+    private long seed = 1;
+    private ScriptedIdentityProvider identityProvider;
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    public RenewalSimulator config(TokenManagerConfig config) {
+        this.config = config;
+        return this;
+    }
+
+    public RenewalSimulator managers(int numberOfManagers) {
+        this.numberOfManagers = numberOfManagers;
+        return this;
+    }
+
+    /**
+     * Start times of the managers are spread uniformly over the given duration.
+     * @param startupSpreadMillis
+     * @return
+     */
+    public RenewalSimulator startupSpread(long startupSpreadMillis) {
+        this.startupSpreadMillis = startupSpreadMillis;
+        return this;
+    }
+
+    public RenewalSimulator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public RenewalSimulator identityProvider(ScriptedIdentityProvider identityProvider) {
+        this.identityProvider = identityProvider;
+        return this;
+    }
+
+    public Report run(long durationMillis) {
+        long wallClockStart = System.nanoTime();
+        Random random = new Random(seed);
+        List<TokenManager> managers = new ArrayList<>(numberOfManagers);
+        Report report = new Report();
+        // like the batchers of the process, one is shared by all the managers
+        RenewalBatcher batcher = config.getRenewalCoalescingWindowInMs() > 0
+                ? new RenewalBatcher(config.getRenewalCoalescingWindowInMs(), clock, scheduler)
+                : null;
+
+        for (int i = 0; i < numberOfManagers; i++) {
+            TokenManager manager = new TokenManager(identityProvider, config, clock, scheduler,
+                    scheduler, batcher);
+            managers.add(manager);
+            long startAt = startupSpreadMillis == 0 ? 0
+                    : (long) (random.nextDouble() * startupSpreadMillis);
+            scheduler.schedule(() -> manager.start(report.newListener(), false), startAt,
+                TimeUnit.MILLISECONDS);
+        }
+        scheduler.runUntil(durationMillis);
+        managers.forEach(TokenManager::stop);
+
+        report.durationMillis = durationMillis;
+        report.requests = identityProvider.getRequests();
+        report.failedRequests = identityProvider.getFailedRequests();
+        report.throttledRequests = identityProvider.getThrottledRequests();
+        report.peakRequestsPerSecond = identityProvider.peakRequestsPerSecond();
+        report.peakConcurrency = identityProvider.peakConcurrency();
+        report.executedEvents = scheduler.getExecutedEvents();
+        report.wallClockMillis = (System.nanoTime() - wallClockStart) / 1_000_000;
+        return report;
+    }
+
+    class Report {
+        private long durationMillis;
+        private int requests;
+        private int failedRequests;
+        private int throttledRequests;
+        private int peakRequestsPerSecond;
+        private int peakConcurrency;
+        private long minTtlMarginMillis = Long.MAX_VALUE;
+        private long renewals;
+        private int failedManagers;
+        private long executedEvents;
+        private long wallClockMillis;
+
+        private TokenListener newListener() {
+            return new TokenListener() {
+                private Token current;
+
+                @Override
+                public void onTokenRenewed(Token newToken) {
+                    if (current != null) {
+                        renewals++;
+                        minTtlMarginMillis = Math.min(minTtlMarginMillis,
+                            current.getExpiresAt() - clock.millis());
+                    }
+                    current = newToken;
+                }
+
+                @Override
+                public void onError(Exception reason) {
+                    failedManagers++;
+                }
+            };
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public int getFailedRequests() {
+            return failedRequests;
+        }
+
+        public int getThrottledRequests() {
+            return throttledRequests;
+        }
+
+        public double getAverageRequestsPerSecond() {
+            return requests * 1000.0 / durationMillis;
+        }
+
+        public int getPeakRequestsPerSecond() {
+            return peakRequestsPerSecond;
+        }
+
+        public int getPeakConcurrency() {
+            return peakConcurrency;
+        }
+
+        /**
+         * The smallest time left to expiration of a token at the moment it was replaced.
+         */
+        public long getMinTtlMarginMillis() {
+            return minTtlMarginMillis;
+        }
+
+        public long getRenewals() {
+            return renewals;
+        }
+
+        /**
+         * Number of managers that gave up after running out of retries.
+         */
+        public int getFailedManagers() {
+            return failedManagers;
+        }
+
+        /**
+         * Number of times a timer woke the scheduler up, see {@link VirtualScheduler#getExecutedEvents()}.
+         */
+        public long getExecutedEvents() {
+            return executedEvents;
+        }
+
+        public long getWallClockMillis() {
+            return wallClockMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + ", failedRequests=" + failedRequests
+                    + ", throttledRequests=" + throttledRequests + ", averageQps="
+                    + String.format("%.2f", getAverageRequestsPerSecond()) + ", peakQps="
+                    + peakRequestsPerSecond + ", peakConcurrency=" + peakConcurrency
+                    + ", minTtlMarginMillis=" + minTtlMarginMillis + ", renewals=" + renewals
+                    + ", failedManagers=" + failedManagers + ", events=" + executedEvents
+                    + ", wallClockMillis=" + wallClockMillis;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Fake identity provider for simulations, running on a {@link VirtualClock}.
+ * Each request takes a latency drawn from the configured distribution and fails if it arrives
+ * within a failure burst, exceeds the throttling limit or hits the random failure rate.
+ * Throttled requests are rejected without latency and ask to retry at the start of the next second.
+ * Every request is recorded so that load on the provider can be analyzed afterwards.
+ */
+class ScriptedIdentityProvider implements IdentityProvider {
+
+    private final VirtualClock clock;
+    private final long tokenLifetimeMillis;
+    private final Random random;
+    private LongSupplier latency = () -> 0;
+    private double failureRate;
+    private int maxRequestsPerSecond = Integer.MAX_VALUE;
+    private final List<long[]> failureBursts = new ArrayList<>();
+
+    private long[] starts = new long[1024];
+    private long[] ends = new long[1024];
+    private int requests;
+    private int failedRequests;
+    private int throttledRequests;
+    private long currentSecond = Long.MIN_VALUE;
+    private int requestsInCurrentSecond;
+
+    public ScriptedIdentityProvider(VirtualClock clock, long tokenLifetimeMillis, long seed) {
+        this.clock = clock;
+        this.tokenLifetimeMillis = tokenLifetimeMillis;
+        this.random = new Random(seed);
+    }
+
+    public ScriptedIdentityProvider fixedLatency(long millis) {
+        latency = () -> millis;
+        return this;
+    }
+
+    public ScriptedIdentityProvider uniformLatency(long minMillis, long maxMillis) {
+        latency = () -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        return this;
+    }
+
+    /**
+     * Latency following a log-normal distribution, which gives the long tail seen in practice.
+     * @param medianMillis
+     * @param sigma
+     * @return
+     */
+    public ScriptedIdentityProvider logNormalLatency(long medianMillis, double sigma) {
+        latency = () -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+        return this;
+    }
+
+    public ScriptedIdentityProvider failureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public ScriptedIdentityProvider failureBurst(long fromMillis, long toMillis) {
+        failureBursts.add(new long[] { fromMillis, toMillis });
+        return this;
+    }
+
+    public ScriptedIdentityProvider throttleAbove(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        return this;
+    }
+
+    @Override
+    public Token requestToken() {
+        long start = clock.millis();
+        boolean throttled = isThrottled(start);
+        long duration = throttled ? 0 : Math.max(latency.getAsLong(), 0);
+        clock.advance(duration);
+        long end = clock.millis();
+        record(start, end);
+
+        if (throttled) {
+            throttledRequests++;
+            failedRequests++;
+            throw new IdentityProviderException("Too many requests!", null,
+                    IdentityProviderException.Classification.THROTTLED, 1000 - start % 1000);
+        }
+        if (inFailureBurst(start) || (failureRate > 0 && random.nextDouble() < failureRate)) {
+            failedRequests++;
+            throw new RuntimeException("Identity provider unavailable!");
+        }
+        return new SimpleToken("user", "token-" + requests, end + tokenLifetimeMillis, end, null);
+    }
+
+    private boolean isThrottled(long now) {
+        long second = Math.floorDiv(now, 1000);
+        if (second != currentSecond) {
+            currentSecond = second;
+            requestsInCurrentSecond = 0;
+        }
+        return ++requestsInCurrentSecond > maxRequestsPerSecond;
+    }
+
+    private boolean inFailureBurst(long now) {
+        for (long[] burst : failureBursts) {
+            if (now >= burst[0] && now < burst[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(long start, long end) {
+        if (requests == starts.length) {
+            starts = Arrays.copyOf(starts, requests * 2);
+            ends = Arrays.copyOf(ends, requests * 2);
+        }
+        starts[requests] = start;
+        ends[requests] = end;
+        requests++;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getFailedRequests() {
+        return failedRequests;
+    }
+
+    public int getThrottledRequests() {
+        return throttledRequests;
+    }
+
+    /**
+     * Highest number of requests that arrived within the same second.
+     */
+    public int peakRequestsPerSecond() {
+        long[] sorted = Arrays.copyOf(starts, requests);
+        Arrays.sort(sorted);
+        int peak = 0;
+        int from = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            while (sorted[i] - sorted[from] >= 1000) {
+                from++;
+            }
+            peak = Math.max(peak, i - from + 1);
+        }
+        return peak;
+    }
+
+    /**
+     * Highest number of requests in flight at the same time.
+     * Requests rejected without any latency do not occupy the provider and are not counted.
+     */
+    public int peakConcurrency() {
+        long[] sortedStarts = new long[requests];
+        long[] sortedEnds = new long[requests];
+        int count = 0;
+        for (int i = 0; i < requests; i++) {
+            if (ends[i] > starts[i]) {
+                sortedStarts[count] = starts[i];
+                sortedEnds[count] = ends[i];
+                count++;
+            }
+        }
+        Arrays.sort(sortedStarts, 0, count);
+        Arrays.sort(sortedEnds, 0, count);
+        int peak = 0;
+        int inFlight = 0;
+        int e = 0;
+        for (int i = 0; i < count; i++) {
+            while (sortedEnds[e] <= sortedStarts[i]) {
+                e++;
+                inFlight--;
+            }
+            inFlight++;
+            peak = Math.max(peak, inFlight);
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that only moves when it is told to.
+ * The simulation sets it to the time of each event before the event runs, and an identity
+ * provider request may move it forward by its latency while the request is in flight.
+ */
+class VirtualClock extends Clock {
+
+    private long now;
+
+    public VirtualClock(long now) {
+        this.now = now;
+    }
+
+    public void set(long now) {
+        this.now = now;
+    }
+
+    public void advance(long millis) {
+        now += millis;
+    }
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(now);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single threaded, discrete-event executor running on a {@link VirtualClock}.
+ * Scheduled tasks are kept in a queue ordered by their due time and only run when the
+ * simulation advances the clock with {@link #runUntil(long)}.
+ * Submitted tasks run inline; the virtual time they consume is remembered so that a timed
+ * wait on their result behaves as if the caller had waited for that long. Executed tasks are
+ * queued to run at the current time, once the running event completed.
+ */
+class VirtualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final VirtualClock clock;
+    private final PriorityQueue<Event<?>> queue = new PriorityQueue<>();
+    private long sequence;
+    private long executedEvents;
+
+    public VirtualScheduler(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Runs all the events due until the given time in order and leaves the clock at that time.
+     * @param time
+     */
+    public void runUntil(long time) {
+        while (!queue.isEmpty() && queue.peek().time <= time) {
+            Event<?> event = queue.poll();
+            if (event.isCancelled()) {
+                continue;
+            }
+            clock.set(event.time);
+            event.run();
+            if (event.timed) {
+                executedEvents++;
+            }
+        }
+        clock.set(time);
+    }
+
+    /**
+     * Number of timed events that ran, each of them a wake-up of the scheduler by its timer.
+     * Tasks handed over with {@link #execute(Runnable)} are not counted.
+     */
+    public long getExecutedEvents() {
+        return executedEvents;
+    }
+
+    public int getPendingEvents() {
+        return queue.size();
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        Event<V> event = new Event<>(callable, clock.millis() + unit.toMillis(Math.max(delay, 0)),
+                sequence++, true);
+        queue.add(event);
+        return event;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(Executors.callable(command), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay,
+            long period, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not simulated!");
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+            long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not simulated!");
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        long start = clock.millis();
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return new InlineFuture<>(future, start, clock.millis() - start);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // handed over tasks run after the running event, at the same time, like on another thread
+        queue.add(new Event<>(Executors.callable(command), clock.millis(), sequence++, false));
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    private class Event<V> extends FutureTask<V> implements ScheduledFuture<V> {
+        private final long time;
+        private final long seq;
+        private final boolean timed;
+
+        Event(Callable<V> callable, long time, long seq, boolean timed) {
+            super(callable);
+            this.time = time;
+            this.seq = seq;
+            this.timed = timed;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - clock.millis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Event<?> that = (Event<?>) other;
+            int byTime = Long.compare(time, that.time);
+            return byTime != 0 ? byTime : Long.compare(seq, that.seq);
+        }
+    }
+
+    /**
+     * Result of a task that already ran inline, taking {@code elapsed} virtual milliseconds.
+     * A timed get shorter than that fails with a timeout and rewinds the clock to the moment the
+     * caller would have given up.
+     */
+    private class InlineFuture<T> implements Future<T> {
+        private final FutureTask<T> completed;
+        private final long start;
+        private final long elapsed;
+
+        InlineFuture(FutureTask<T> completed, long start, long elapsed) {
+            this.completed = completed;
+            this.start = start;
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            return completed.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long timeoutInMs = unit.toMillis(timeout);
+            if (elapsed > timeoutInMs) {
+                clock.set(start + timeoutInMs);
+                throw new TimeoutException();
+            }
+            return completed.get();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker shared by every identity provider in this process sending its requests to the same
+ * endpoint, so that during an outage of the endpoint they fail fast instead of each of them sending
+ * requests into it and waiting for them to time out.
+ * <p>
+ * The circuit opens after a number of consecutive failed or slow requests. While it is open, requests
+ * are not sent. Once it has been open for the configured duration, a single request is let through as a
+ * probe, which closes the circuit if it succeeds and opens it again if it fails.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static class Policy {
+        private final int failureThreshold;
+        private final int slowCallThresholdInMs;
+        private final int openDurationInMs;
+
+        /**
+         * @param failureThreshold number of consecutive failed or slow requests opening the circuit
+         * @param slowCallThresholdInMs duration from which a successful request counts as failed, 0 to
+         * count only failures
+         * @param openDurationInMs time the circuit stays open before it is probed
+         */
+        public Policy(int failureThreshold, int slowCallThresholdInMs, int openDurationInMs) {
+            this.failureThreshold = failureThreshold;
+            this.slowCallThresholdInMs = slowCallThresholdInMs;
+            this.openDurationInMs = openDurationInMs;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public int getSlowCallThresholdInMs() {
+            return slowCallThresholdInMs;
+        }
+
+        public int getOpenDurationInMs() {
+            return openDurationInMs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Policy)) {
+                return false;
+            }
+            Policy other = (Policy) o;
+            return failureThreshold == other.failureThreshold
+                    && slowCallThresholdInMs == other.slowCallThresholdInMs
+                    && openDurationInMs == other.openDurationInMs;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(failureThreshold, slowCallThresholdInMs, openDurationInMs);
+        }
+
+        @Override
+        public String toString() {
+            return "Policy{failureThreshold=" + failureThreshold + ", slowCallThresholdInMs="
+                    + slowCallThresholdInMs + ", openDurationInMs=" + openDurationInMs + "}";
+        }
+    }
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final Policy policy;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    private CircuitBreaker(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Returns the circuit breaker of the given endpoint. It is created with the given policy by the
+     * first caller, the later ones share it and have to ask for the same policy.
+     * @param endpoint
+     * @param policy
+     * @return
+     * @throws RedisEntraIDException if the circuit breaker of the endpoint has another policy
+     */
+    static CircuitBreaker forEndpoint(String endpoint, Policy policy) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(endpoint, k -> new CircuitBreaker(policy));
+        if (!breaker.policy.equals(policy)) {
+            throw new RedisEntraIDException("Circuit breaker of " + endpoint
+                    + " already has the policy " + breaker.policy + ", not " + policy + "!");
+        }
+        return breaker;
+    }
+
+    /**
+     * Removes the circuit breaker of the given endpoint, so that the next provider of the endpoint
+     * creates it again with its own policy. The providers already using it keep it.
+     * @param endpoint
+     */
+    public static void remove(String endpoint) {
+        breakers.remove(endpoint);
+    }
+
+    /**
+     * Returns the state of the circuit breaker of the given endpoint, null if there is none
+     * @param endpoint
+     * @return
+     */
+    public static State stateOf(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        return breaker == null ? null : breaker.getState();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns 0 if a request may be sent, otherwise the time in milliseconds after which it should be
+     * tried again
+     * @return
+     */
+    synchronized long tryAcquire() {
+        switch (state) {
+        case OPEN:
+            long remaining = openUntil - System.currentTimeMillis();
+            if (remaining > 0) {
+                return remaining;
+            }
+            state = State.HALF_OPEN;
+            probing = true;
+            return 0;
+        case HALF_OPEN:
+            // only the probe is let through, the others wait for its outcome
+            return probing ? policy.getOpenDurationInMs() : 0;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Records a request the endpoint answered, which counts as failed if it was slow
+     * @param durationInMs
+     */
+    synchronized void onSuccess(long durationInMs) {
+        if (policy.getSlowCallThresholdInMs() > 0
+                && durationInMs >= policy.getSlowCallThresholdInMs()) {
+            onFailure();
+            return;
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    /**
+     * Records a request the endpoint failed to answer
+     */
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= policy.getFailureThreshold()) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + policy.getOpenDurationInMs();
+            probing = false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+
+import redis.clients.authentication.core.IdentityProviderException.Classification;
+
+/**
+ * Keeps the client assertions signed with a certificate per client id, audience and certificate, so
+ * that every provider in this process authenticating with the same certificate reuses them instead of
+ * signing a new one for each token request.
+ * An assertion is re-signed in the background ahead of its expiry as long as it is being used.
+ */
+final class ClientAssertionCache {
+
+    static final long VALIDITY_IN_MS = 10 * 60 * 1000;
+    static final long RENEW_AHEAD_IN_MS = 2 * 60 * 1000;
+
+    private static final String SHA256_THUMBPRINT_HEADER = "x5t#S256";
+
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService signer = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "entraid-assertion-signer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private ClientAssertionCache() {
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final String clientId;
+        private final String audience;
+        private final Algorithm algorithm;
+        private final String thumbprint;
+        private volatile String assertion;
+        private volatile long expiresAt;
+        private volatile boolean used;
+
+        private Entry(String id, String clientId, String audience, RSAPrivateKey key,
+                String thumbprint) {
+            this.id = id;
+            this.clientId = clientId;
+            this.audience = audience;
+            this.algorithm = Algorithm.RSA256(null, key);
+            this.thumbprint = thumbprint;
+        }
+
+        private synchronized void sign() {
+            long now = System.currentTimeMillis();
+            assertion = JWT.create()
+                    .withHeader(Collections.singletonMap(SHA256_THUMBPRINT_HEADER, thumbprint))
+                    .withAudience(audience).withIssuer(clientId).withSubject(clientId)
+                    .withJWTId(UUID.randomUUID().toString()).withNotBefore(new Date(now))
+                    .withExpiresAt(new Date(now + VALIDITY_IN_MS)).sign(algorithm);
+            expiresAt = now + VALIDITY_IN_MS;
+        }
+
+        private synchronized String get() {
+            used = true;
+            if (expiresAt - System.currentTimeMillis() < RENEW_AHEAD_IN_MS / 2) {
+                // the background renewal is late or failed, do not hand out an expiring assertion
+                sign();
+            }
+            return assertion;
+        }
+    }
+
+    /**
+     * Returns the supplier of the assertions for the given certificate, or null if they can not be
+     * cached and MSAL has to sign them.
+     * @param clientId
+     * @param audience
+     * @param key
+     * @param cert
+     * @return
+     */
+    static Supplier<String> assertionsFor(String clientId, String audience, PrivateKey key,
+            X509Certificate cert) {
+        if (clientId == null || audience == null || !(key instanceof RSAPrivateKey)
+                || cert == null) {
+            return null;
+        }
+        String thumbprint = thumbprint(cert);
+        String id = clientId + "#" + audience + "#" + thumbprint;
+        return () -> entries.computeIfAbsent(id, k -> {
+            Entry entry = new Entry(id, clientId, audience, (RSAPrivateKey) key, thumbprint);
+            entry.sign();
+            scheduleRenewal(entry);
+            return entry;
+        }).get();
+    }
+
+    private static void scheduleRenewal(Entry entry) {
+        long delay = Math.max(0, entry.expiresAt - RENEW_AHEAD_IN_MS - System.currentTimeMillis());
+        signer.schedule(() -> renew(entry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void renew(Entry entry) {
+        if (!entry.used) {
+            // nobody asked for it since it was signed, stop renewing until it is needed again
+            entries.remove(entry.id, entry);
+            return;
+        }
+        entry.used = false;
+        try {
+            entry.sign();
+        } catch (RuntimeException e) {
+            // the assertion in use is still valid, get() signs it again if this keeps failing
+        }
+        scheduleRenewal(entry);
+    }
+
+    private static String thumbprint(X509Certificate cert) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new RedisEntraIDException("Failed to get the thumbprint of the certificate!", e,
+                    Classification.PERMANENT, 0);
+        }
+    }
+}
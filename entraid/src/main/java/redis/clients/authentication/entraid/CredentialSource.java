@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Source of the credential a service principal authenticates with, which may change at runtime, e.g.
+ * when a client secret or certificate is rotated.
+ * The identity provider asks for the credential on every token request, and once it gets a different
+ * one, it rebuilds its client application with it. The token manager keeps running, so tokens are
+ * delivered without interruption.
+ * See {@link SwappableCredentialSource} and {@link PemFileCredentialSource}.
+ */
+public interface CredentialSource {
+
+    /**
+     * Returns the current credential. It is called on every token request, so it should be cheap, and
+     * return the same instance until the credential changes.
+     * @return
+     */
+    Credential getCredential();
+
+    /**
+     * A client secret, or a private key with its certificate.
+     */
+    public static final class Credential {
+        private final String secret;
+        private final PrivateKey key;
+        private final X509Certificate cert;
+
+        private Credential(String secret, PrivateKey key, X509Certificate cert) {
+            this.secret = secret;
+            this.key = key;
+            this.cert = cert;
+        }
+
+        public static Credential ofSecret(String secret) {
+            return new Credential(secret, null, null);
+        }
+
+        public static Credential ofCertificate(PrivateKey key, X509Certificate cert) {
+            return new Credential(null, key, cert);
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public PrivateKey getKey() {
+            return key;
+        }
+
+        public X509Certificate getCert() {
+            return cert;
+        }
+    }
+}
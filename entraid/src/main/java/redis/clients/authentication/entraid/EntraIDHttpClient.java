@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.microsoft.aad.msal4j.HttpMethod;
+import com.microsoft.aad.msal4j.HttpRequest;
+import com.microsoft.aad.msal4j.HttpResponse;
+import com.microsoft.aad.msal4j.IHttpClient;
+import com.microsoft.aad.msal4j.IHttpResponse;
+
+/**
+ * HTTP transport for MSAL meant to be shared by all the identity providers of a process.
+ * It does not pool connections itself. Every response is read to the end, which lets the keep-alive
+ * cache of the JDK reuse its connection for the next request to the same host, so that renewals do not
+ * pay for a new TCP connection and TLS handshake each time. That cache is shared by the whole process
+ * and is configured through the {@code http.keepAlive} and {@code http.maxConnections} system
+ * properties, the latter bounding the idle connections it keeps per destination.
+ * <p>
+ * Connect and read timeouts are separate, and the number of requests in flight can be bounded, so
+ * that a burst of renewals waits for a permit instead of opening a connection for each request.
+ */
+public class EntraIDHttpClient implements IHttpClient {
+
+    private final int connectTimeoutInMs;
+    private final int readTimeoutInMs;
+    private final Proxy proxy;
+    private final SSLSocketFactory sslSocketFactory;
+    private final Semaphore concurrentRequests;
+
+    public EntraIDHttpClient(int connectTimeoutInMs, int readTimeoutInMs) {
+        this(connectTimeoutInMs, readTimeoutInMs, null, null, 0);
+    }
+
+    /**
+     * @param connectTimeoutInMs
+     * @param readTimeoutInMs
+     * @param proxy null to connect directly
+     * @param sslSocketFactory null for the default of the JDK
+     * @param maxConcurrentRequests number of requests sent at the same time, the others wait for one
+     * of them to complete, 0 for no limit
+     */
+    public EntraIDHttpClient(int connectTimeoutInMs, int readTimeoutInMs, Proxy proxy,
+            SSLSocketFactory sslSocketFactory, int maxConcurrentRequests) {
+        this.connectTimeoutInMs = connectTimeoutInMs;
+        this.readTimeoutInMs = readTimeoutInMs;
+        this.proxy = proxy;
+        this.sslSocketFactory = sslSocketFactory;
+        this.concurrentRequests = maxConcurrentRequests > 0
+                ? new Semaphore(maxConcurrentRequests, true)
+                : null;
+    }
+
+    public int getConnectTimeoutInMs() {
+        return connectTimeoutInMs;
+    }
+
+    public int getReadTimeoutInMs() {
+        return readTimeoutInMs;
+    }
+
+    @Override
+    public IHttpResponse send(HttpRequest httpRequest) throws Exception {
+        if (concurrentRequests != null) {
+            concurrentRequests.acquire();
+        }
+        try {
+            return execute(httpRequest.url(), httpRequest.httpMethod(), httpRequest.headers(),
+                httpRequest.body());
+        } finally {
+            if (concurrentRequests != null) {
+                concurrentRequests.release();
+            }
+        }
+    }
+
+    private HttpResponse execute(URL url, HttpMethod method, Map<String, String> headers,
+            String body) throws IOException {
+        HttpURLConnection connection = openConnection(url);
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getValue() != null) {
+                    connection.addRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+        }
+        if (method == HttpMethod.POST) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        try {
+            HttpResponse response = new HttpResponse();
+            int status = connection.getResponseCode();
+            response.statusCode(status);
+            response.addHeaders(connection.getHeaderFields());
+            InputStream in = status < 400 ? connection.getInputStream()
+                    : connection.getErrorStream();
+            response.body(in == null ? "" : readFully(in));
+            return response;
+        } catch (IOException e) {
+            // the state of the connection is unknown, do not return it to the cache
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a GET request and returns the body of a successful response, null otherwise.
+     * @param url
+     * @return
+     */
+    String get(URL url) {
+        try {
+            IHttpResponse response = execute(url, HttpMethod.GET, null, null);
+            return response.statusCode() == HttpURLConnection.HTTP_OK ? response.body() : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private HttpURLConnection openConnection(URL url) throws IOException {
+        URLConnection connection = proxy == null ? url.openConnection()
+                : url.openConnection(proxy);
+        connection.setConnectTimeout(connectTimeoutInMs);
+        connection.setReadTimeout(readTimeoutInMs);
+        if (sslSocketFactory != null && connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+        }
+        return (HttpURLConnection) connection;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = stream.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
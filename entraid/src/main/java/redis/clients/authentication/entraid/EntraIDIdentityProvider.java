@@ -6,10 +6,22 @@
  */
 package redis.clients.authentication.entraid;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 import com.microsoft.aad.msal4j.ClientCredentialFactory;
@@ -17,78 +29,368 @@ import com.microsoft.aad.msal4j.ClientCredentialParameters;
 import com.microsoft.aad.msal4j.ConfidentialClientApplication;
 import com.microsoft.aad.msal4j.IAuthenticationResult;
 import com.microsoft.aad.msal4j.IClientCredential;
+import com.microsoft.aad.msal4j.IHttpClient;
+import com.microsoft.aad.msal4j.ITokenCacheAccessAspect;
 import com.microsoft.aad.msal4j.ManagedIdentityApplication;
 import com.microsoft.aad.msal4j.ManagedIdentityParameters;
+import com.microsoft.aad.msal4j.MsalServiceException;
+import com.microsoft.aad.msal4j.MsalThrottlingException;
 import redis.clients.authentication.core.IdentityProvider;
+import redis.clients.authentication.core.IdentityProviderException.Classification;
 import redis.clients.authentication.core.Token;
+import redis.clients.authentication.entraid.ServicePrincipalInfo.ServicePrincipalAccess;
 
+/**
+ * Requests tokens from Entra ID through MSAL.
+ * It is safe for concurrent use, so one provider can be shared by any number of token managers.
+ */
 public final class EntraIDIdentityProvider implements IdentityProvider {
 
     private interface ClientApp {
-        public IAuthenticationResult request();
+        public IAuthenticationResult request(boolean fromCache);
     }
 
     private interface ClientAppFactory {
         public ClientApp create();
     }
 
-    private ClientAppFactory clientAppFactory;
-    private ClientApp clientApp;
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    static final String MANAGED_IDENTITY_ENDPOINT = "managed-identity";
+    // the error of a rejected client secret or assertion
+    private static final String INVALID_CLIENT = "invalid_client";
+    private static final String INSTANCE_DISCOVERY_URL = "https://%s/common/discovery/instance?api-version=1.1&authorization_endpoint=%s";
+    private static final String AUTHORIZE_ENDPOINT = "https://%s/%s/oauth2/v2.0/authorize";
+
+    private final ClientAppFactory clientAppFactory;
+    // created once by the first caller, the others wait for it
+    private final AtomicReference<CompletableFuture<ClientApp>> clientApp = new AtomicReference<>();
+    // identifies whose requests are throttled together, null if it is not known
+    private final String identity;
+    // identifies whose requests share a circuit breaker, null if it is not known
+    private final String endpoint;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile boolean offHeapTokens;
+    private volatile TokenValidator tokenValidator;
+    // resolved by warmUp, so that the client app does not look it up on the first request
+    private final Runnable authorityResolver;
+    private volatile String instanceDiscoveryResponse;
+    // shared transport, null to let MSAL create its own
+    private final IHttpClient httpClient;
+    // whether initial requests may be served from the token cache, renewals always go to Entra ID
+    private final boolean useTokenCache;
+    // connect timeout of the IMDS probe before initial requests, 0 not to probe
+    private final int probeTimeoutInMs;
+    // endpoint of the IMDS probe, null for the one of this host
+    private final String probeEndpoint;
 
     public EntraIDIdentityProvider(ServicePrincipalInfo servicePrincipalInfo, Set<String> scopes,
             int timeout) {
+        this(servicePrincipalInfo, scopes, timeout, null);
+    }
+
+    /**
+     * @param servicePrincipalInfo
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     */
+    public EntraIDIdentityProvider(ServicePrincipalInfo servicePrincipalInfo, Set<String> scopes,
+            int timeout, IHttpClient httpClient) {
+        this(servicePrincipalInfo, scopes, timeout, httpClient, null);
+    }
+
+    /**
+     * @param servicePrincipalInfo
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     * @param tokenCache token cache serving the initial requests, see {@link #requestToken()}, null to
+     * always request a new token
+     */
+    public EntraIDIdentityProvider(ServicePrincipalInfo servicePrincipalInfo, Set<String> scopes,
+            int timeout, IHttpClient httpClient, ITokenCacheAccessAspect tokenCache) {
 
+        this.httpClient = httpClient;
+        this.useTokenCache = tokenCache != null;
+        this.probeTimeoutInMs = 0;
+        this.probeEndpoint = null;
+        identity = identityOf(servicePrincipalInfo);
+        endpoint = servicePrincipalInfo.getAuthority() == null
+                ? ConfidentialClientApplication.DEFAULT_AUTHORITY
+                : servicePrincipalInfo.getAuthority();
         clientAppFactory = () -> {
-            return createConfidentialClientApp(servicePrincipalInfo, scopes, timeout);
+            return createConfidentialClientApp(servicePrincipalInfo, scopes, timeout, tokenCache);
         };
+        authorityResolver = () -> {
+            // a custom transport can not be sent a request from here, MSAL resolves the authority
+            // through it on the first request then
+            if (httpClient == null || httpClient instanceof EntraIDHttpClient) {
+                instanceDiscoveryResponse = fetchInstanceDiscovery(
+                    servicePrincipalInfo.getAuthority(),
+                    httpClient != null ? (EntraIDHttpClient) httpClient
+                            : new EntraIDHttpClient(timeout, timeout));
+            }
+        };
+    }
+
+    static String identityOf(ServicePrincipalInfo servicePrincipalInfo) {
+        return servicePrincipalInfo.getAuthority() + "#" + servicePrincipalInfo.getClientId();
     }
 
     private ClientApp createConfidentialClientApp(ServicePrincipalInfo servicePrincipalInfo,
-            Set<String> scopes, int timeout) {
-        IClientCredential credential = getClientCredential(servicePrincipalInfo);
-        ConfidentialClientApplication app;
+            Set<String> scopes, int timeout, ITokenCacheAccessAspect tokenCache) {
+        if (servicePrincipalInfo.getAccessWith() == ServicePrincipalAccess.WithCredentialSource) {
+            return createRotatingClientApp(servicePrincipalInfo, scopes, timeout, tokenCache);
+        }
+        ClientCredentialParameters params = ClientCredentialParameters.builder(scopes)
+                .skipCache(true).build();
+        ClientCredentialParameters cachedParams = ClientCredentialParameters.builder(scopes)
+                .skipCache(false).build();
+        Supplier<String> assertions = getAssertions(servicePrincipalInfo);
+        if (assertions == null) {
+            ConfidentialClientApplication app = buildConfidentialClientApp(servicePrincipalInfo,
+                getClientCredential(servicePrincipalInfo), timeout, tokenCache);
+            return fromCache -> requestWithConfidentialClient(app,
+                fromCache ? cachedParams : params);
+        }
 
+        // MSAL keeps the assertion it is built with, so the app is rebuilt once the cached one is renewed
+        // or the federated token file is rotated
+        return new ClientApp() {
+            private String assertion;
+            private ConfidentialClientApplication app;
+
+            @Override
+            public IAuthenticationResult request(boolean fromCache) {
+                ConfidentialClientApplication current;
+                synchronized (this) {
+                    String latest = assertions.get();
+                    if (!latest.equals(assertion)) {
+                        app = buildConfidentialClientApp(servicePrincipalInfo,
+                            ClientCredentialFactory.createFromClientAssertion(latest), timeout,
+                            tokenCache);
+                        assertion = latest;
+                    }
+                    current = app;
+                }
+                return requestWithConfidentialClient(current, fromCache ? cachedParams : params);
+            }
+        };
+    }
+
+    private ConfidentialClientApplication buildConfidentialClientApp(
+            ServicePrincipalInfo servicePrincipalInfo, IClientCredential credential, int timeout,
+            ITokenCacheAccessAspect tokenCache) {
         try {
             String authority = servicePrincipalInfo.getAuthority();
             authority = authority == null ? ConfidentialClientApplication.DEFAULT_AUTHORITY
                     : authority;
-            app = ConfidentialClientApplication
-                    .builder(servicePrincipalInfo.getClientId(), credential).authority(authority)
-                    .readTimeoutForDefaultHttpClient(timeout).build();
+            ConfidentialClientApplication.Builder builder = ConfidentialClientApplication
+                    .builder(servicePrincipalInfo.getClientId(), credential).authority(authority);
+            if (httpClient != null) {
+                builder.httpClient(httpClient);
+            } else {
+                builder.readTimeoutForDefaultHttpClient(timeout);
+            }
+            if (instanceDiscoveryResponse != null) {
+                builder.aadInstanceDiscoveryResponse(instanceDiscoveryResponse);
+            }
+            if (tokenCache != null) {
+                builder.setTokenCacheAccessAspect(tokenCache);
+            }
+            return builder.build();
         } catch (MalformedURLException e) {
-            throw new RedisEntraIDException("Failed to init EntraID client!", e);
+            throw new RedisEntraIDException("Failed to init EntraID client!", e,
+                    Classification.PERMANENT, 0);
         }
-        ClientCredentialParameters params = ClientCredentialParameters.builder(scopes)
-                .skipCache(true).build();
+    }
 
-        return () -> requestWithConfidentialClient(app, params);
+    /**
+     * Returns the audience MSAL signs the client assertions for, the token endpoint of the authority.
+     * Only Entra ID tenant authorities are supported, for any other (B2C, CIAM, ADFS) it returns null.
+     * @param authority
+     * @return
+     */
+    static String getAssertionAudience(String authority) {
+        try {
+            URL authorityUrl = new URL(authority == null
+                    ? ConfidentialClientApplication.DEFAULT_AUTHORITY : authority);
+            String[] segments = authorityUrl.getPath().split("/");
+            if (segments.length < 2 || segments[1].isEmpty() || "adfs".equalsIgnoreCase(segments[1])
+                    || "tfp".equalsIgnoreCase(segments[1])
+                    || authorityUrl.getHost().toLowerCase().endsWith(".b2clogin.com")
+                    || authorityUrl.getHost().toLowerCase().endsWith(".ciamlogin.com")) {
+                return null;
+            }
+            return "https://" + authorityUrl.getAuthority().toLowerCase() + "/" + segments[1]
+                    + "/oauth2/v2.0/token";
+        } catch (MalformedURLException e) {
+            return null;
+        }
     }
 
     public EntraIDIdentityProvider(ManagedIdentityInfo info, Set<String> scopes, int timeout) {
+        this(info, scopes, timeout, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     */
+    public EntraIDIdentityProvider(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient) {
+        this(info, scopes, timeout, httpClient, false);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     * @param useTokenCache whether initial requests are served from the token cache MSAL shares among
+     * all managed identity applications of the process, see {@link #requestToken()}
+     */
+    public EntraIDIdentityProvider(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache) {
+        this(info, scopes, timeout, httpClient, useTokenCache, 0);
+    }
 
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     * @param useTokenCache whether initial requests are served from the token cache MSAL shares among
+     * all managed identity applications of the process, see {@link #requestToken()}
+     * @param probeTimeoutInMs connect timeout of the {@link ManagedIdentityProbe} run before initial
+     * requests, 0 not to probe
+     */
+    public EntraIDIdentityProvider(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache, int probeTimeoutInMs) {
+        this(info, scopes, timeout, httpClient, useTokenCache, probeTimeoutInMs, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout read timeout of the requests, used only if there is no httpClient
+     * @param httpClient transport shared with other providers, null to use the default of MSAL
+     * @param useTokenCache whether initial requests are served from the token cache MSAL shares among
+     * all managed identity applications of the process, see {@link #requestToken()}
+     * @param probeTimeoutInMs connect timeout of the {@link ManagedIdentityProbe} run before initial
+     * requests, 0 not to probe
+     * @param probeEndpoint endpoint the probe connects to, e.g. where the httpClient sends the IMDS
+     * requests, null for the IMDS endpoint of this host
+     */
+    public EntraIDIdentityProvider(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache, int probeTimeoutInMs,
+            String probeEndpoint) {
+
+        this.httpClient = httpClient;
+        this.useTokenCache = useTokenCache;
+        this.probeTimeoutInMs = probeTimeoutInMs;
+        this.probeEndpoint = probeEndpoint;
+        identity = "managed-identity#" + info.getId().getIdType() + "#"
+                + info.getId().getUserAssignedId();
+        endpoint = MANAGED_IDENTITY_ENDPOINT;
         clientAppFactory = () -> {
             return createManagedIdentityApp(info, scopes, timeout);
         };
+        authorityResolver = null;
     }
 
     private ClientApp createManagedIdentityApp(ManagedIdentityInfo info, Set<String> scopes,
             int timeout) {
-        ManagedIdentityApplication app = ManagedIdentityApplication.builder(info.getId())
-                .readTimeoutForDefaultHttpClient(timeout).build();
+        ManagedIdentityApplication.Builder builder = ManagedIdentityApplication
+                .builder(info.getId());
+        ManagedIdentityApplication app = httpClient != null ? builder.httpClient(httpClient).build()
+                : builder.readTimeoutForDefaultHttpClient(timeout).build();
 
         ManagedIdentityParameters params = ManagedIdentityParameters
                 .builder(scopes.iterator().next()).forceRefresh(true).build();
-        return () -> requestWithManagedIdentity(app, params);
+        ManagedIdentityParameters cachedParams = ManagedIdentityParameters
+                .builder(scopes.iterator().next()).forceRefresh(false).build();
+        return fromCache -> requestWithManagedIdentity(app, fromCache ? cachedParams : params);
     }
 
     public EntraIDIdentityProvider(
             Supplier<IAuthenticationResult> customEntraIdAuthenticationSupplier) {
 
         clientAppFactory = () -> {
-            return () -> customEntraIdAuthenticationSupplier.get();
+            return fromCache -> customEntraIdAuthenticationSupplier.get();
+        };
+        identity = null;
+        endpoint = null;
+        authorityResolver = null;
+        httpClient = null;
+        useTokenCache = false;
+        probeTimeoutInMs = 0;
+        probeEndpoint = null;
+    }
+
+    /**
+     * Creates the client app of a service principal with a credential source, which is rebuilt with the
+     * credential of the source once it changed. Token requests in progress complete with the app they
+     * started with.
+     * A credential Entra ID rejects as invalid fails the request as transient, as the credential may
+     * have been revoked before the source has the one replacing it, which a retry then picks up.
+     */
+    private ClientApp createRotatingClientApp(ServicePrincipalInfo servicePrincipalInfo,
+            Set<String> scopes, int timeout, ITokenCacheAccessAspect tokenCache) {
+        CredentialSource source = servicePrincipalInfo.getCredentialSource();
+        return new ClientApp() {
+            private CredentialSource.Credential credential;
+            private ClientApp app;
+
+            @Override
+            public IAuthenticationResult request(boolean fromCache) {
+                ClientApp current;
+                synchronized (this) {
+                    CredentialSource.Credential latest = source.getCredential();
+                    if (latest != credential) {
+                        ServicePrincipalInfo info = latest.getSecret() != null
+                                ? new ServicePrincipalInfo(servicePrincipalInfo.getClientId(),
+                                        latest.getSecret(), servicePrincipalInfo.getAuthority())
+                                : new ServicePrincipalInfo(servicePrincipalInfo.getClientId(),
+                                        latest.getKey(), latest.getCert(),
+                                        servicePrincipalInfo.getAuthority());
+                        app = createConfidentialClientApp(info, scopes, timeout, tokenCache);
+                        credential = latest;
+                    }
+                    current = app;
+                }
+                try {
+                    return current.request(fromCache);
+                } catch (RedisEntraIDException e) {
+                    if (isInvalidClient(e)) {
+                        throw new RedisEntraIDException(e.getMessage(), e,
+                                Classification.TRANSIENT, 0);
+                    }
+                    throw e;
+                }
+            }
         };
     }
 
+    /**
+     * Returns the supplier of the client assertions of the given service principal, null if MSAL
+     * creates them from its credential
+     */
+    private static Supplier<String> getAssertions(ServicePrincipalInfo servicePrincipalInfo) {
+        switch (servicePrincipalInfo.getAccessWith()) {
+        case WithCert:
+            return ClientAssertionCache.assertionsFor(servicePrincipalInfo.getClientId(),
+                getAssertionAudience(servicePrincipalInfo.getAuthority()),
+                servicePrincipalInfo.getKey(), servicePrincipalInfo.getCert());
+        case WithFederatedToken:
+            return WatchedFile.of(servicePrincipalInfo.getFederatedTokenFile())::get;
+        default:
+            return null;
+        }
+    }
+
     private IClientCredential getClientCredential(ServicePrincipalInfo servicePrincipalInfo) {
         switch (servicePrincipalInfo.getAccessWith()) {
         case WithSecret:
@@ -97,14 +399,185 @@ public final class EntraIDIdentityProvider implements IdentityProvider {
             return ClientCredentialFactory.createFromCertificate(servicePrincipalInfo.getKey(),
                 servicePrincipalInfo.getCert());
         default:
-            throw new RedisEntraIDException("Invalid ServicePrincipalAccess type!");
+            throw new RedisEntraIDException("Invalid ServicePrincipalAccess type!", null,
+                    Classification.PERMANENT, 0);
+        }
+    }
+
+    /**
+     * Prepares this provider for its first token request without requesting a token.
+     * It resolves the instance discovery metadata of the authority, which also opens a keep-alive
+     * connection to it, and creates the MSAL client application.
+     * The metadata is resolved through the {@link EntraIDHttpClient} of this provider, or directly as
+     * MSAL would without one. With any other transport it is not resolved, so that no request is sent
+     * outside of that transport.
+     * Failing to resolve the metadata is not an error, MSAL resolves it on the first request then.
+     * @return the time it took in milliseconds
+     */
+    public long warmUp() {
+        long start = System.nanoTime();
+        getClientApp(true);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the client app, creating it if this is the first call.
+     * Exactly one caller creates it, concurrent callers wait for that one instead of creating their
+     * own, and once it is created getting it takes no lock. If the creation fails, every waiting
+     * caller fails with it and the next call tries again.
+     * @param warmUp whether to resolve the authority before creating it
+     * @return
+     */
+    private ClientApp getClientApp(boolean warmUp) {
+        while (true) {
+            CompletableFuture<ClientApp> current = clientApp.get();
+            if (current != null) {
+                try {
+                    return current.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            CompletableFuture<ClientApp> created = new CompletableFuture<>();
+            if (clientApp.compareAndSet(null, created)) {
+                try {
+                    if (warmUp && authorityResolver != null) {
+                        authorityResolver.run();
+                    }
+                    ClientApp app = clientAppFactory.create();
+                    created.complete(app);
+                    return app;
+                } catch (RuntimeException e) {
+                    clientApp.compareAndSet(created, null);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
         }
     }
 
+    /**
+     * Requests the initial token of a caller from Entra ID.
+     * While Entra ID throttles the requests of this identity, or the circuit breaker of its endpoint
+     * is open, it fails without sending any request.
+     * With a probe timeout, a managed identity fails right away if the IMDS endpoint can not be
+     * connected to, see {@link ManagedIdentityProbe}, permanently only if it never can be.
+     * With a token cache, the token can come from the cache, e.g. one that another token manager
+     * sharing this provider received.
+     * With a token validator, the token is returned only once it was validated.
+     */
     @Override
     public Token requestToken() {
-        clientApp = clientApp == null ? clientAppFactory.create() : clientApp;
-        return new JWToken(clientApp.request().accessToken());
+        return requestToken(false);
+    }
+
+    /**
+     * Requests a new token from Entra ID to replace the one the caller has, never from the token cache
+     * and without probing IMDS, see {@link #requestToken()}.
+     */
+    @Override
+    public Token renewToken() {
+        return requestToken(true);
+    }
+
+    private Token requestToken(boolean renewal) {
+        long throttledFor = ThrottlingRegistry.throttledFor(identity);
+        if (throttledFor > 0) {
+            throw new RedisEntraIDException("Token requests are throttled by EntraID!", null,
+                    Classification.THROTTLED, throttledFor);
+        }
+        // before the circuit breaker, which would otherwise let the probe take the trial request of
+        // a half open breaker without ever recording its outcome
+        if (probeTimeoutInMs > 0 && !renewal) {
+            ManagedIdentityProbe.Result probe = ManagedIdentityProbe.probe(probeEndpoint,
+                    probeTimeoutInMs);
+            if (probe != null && !probe.isReachable()) {
+                // e.g. the network is not up yet at boot, unless the endpoint can never be reached
+                throw new RedisEntraIDException(
+                        "Managed identity endpoint is not reachable! " + probe.getFailure(), null,
+                        probe.isTransientFailure() ? Classification.TRANSIENT
+                                : Classification.PERMANENT,
+                        0);
+            }
+        }
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null) {
+            long openFor = breaker.tryAcquire();
+            if (openFor > 0) {
+                throw new RedisEntraIDException(
+                        "Circuit breaker is open, token requests to " + endpoint + " are not sent!",
+                        null, Classification.THROTTLED, openFor);
+            }
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            String accessToken = getClientApp(false).request(useTokenCache && !renewal)
+                    .accessToken();
+            TokenValidator validator = tokenValidator;
+            if (validator != null) {
+                // the String MSAL returned, an off heap token would be copied back to the heap
+                validator.validate(accessToken);
+            }
+            Token token = offHeapTokens ? JWToken.offHeap(accessToken) : new JWToken(accessToken);
+            if (breaker != null) {
+                breaker.onSuccess(System.currentTimeMillis() - startedAt);
+            }
+            return token;
+        } catch (RedisEntraIDException e) {
+            if (e.getClassification() == Classification.THROTTLED) {
+                ThrottlingRegistry.throttle(identity, e.getRetryAfterInMs());
+            }
+            if (breaker != null) {
+                if (e.getClassification() == Classification.TRANSIENT && !isInvalidClient(e)) {
+                    breaker.onFailure();
+                } else {
+                    // the endpoint is up and answered, only this request was refused
+                    breaker.onSuccess(System.currentTimeMillis() - startedAt);
+                }
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            if (breaker != null) {
+                breaker.onFailure();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Makes this provider keep the value of the tokens it returns off the heap, where it is wiped once
+     * the token manager renewed it and it expired, see
+     * {@link redis.clients.authentication.core.OffHeapToken}.
+     * The access token MSAL returns, and keeps in its token cache, is still a String.
+     * @param offHeapTokens
+     */
+    public void useOffHeapTokens(boolean offHeapTokens) {
+        this.offHeapTokens = offHeapTokens;
+    }
+
+    /**
+     * Makes this provider validate the tokens it receives before it returns them, see
+     * {@link TokenValidator}. A token that is not valid fails the request as a permanent failure.
+     * @param tokenValidator null not to validate the tokens
+     */
+    public void useTokenValidator(TokenValidator tokenValidator) {
+        this.tokenValidator = tokenValidator;
+    }
+
+    /**
+     * Makes this provider share the circuit breaker of its endpoint with the other providers of the
+     * process, see {@link CircuitBreaker}. The endpoint of a service principal without an authority is
+     * the default authority of MSAL. Has no effect on a provider with a custom authentication
+     * supplier, whose endpoint is not known.
+     * @param policy
+     * @throws RedisEntraIDException if the circuit breaker of the endpoint has another policy
+     */
+    public void useCircuitBreaker(CircuitBreaker.Policy policy) {
+        circuitBreaker = endpoint == null || policy == null ? null
+                : CircuitBreaker.forEndpoint(endpoint, policy);
     }
 
     public IAuthenticationResult requestWithConfidentialClient(ConfidentialClientApplication app,
@@ -113,7 +586,7 @@ public final class EntraIDIdentityProvider implements IdentityProvider {
             Future<IAuthenticationResult> tokenRequest = app.acquireToken(params);
             return tokenRequest.get();
         } catch (InterruptedException | ExecutionException e) {
-            throw new RedisEntraIDException("Failed to acquire token!", e);
+            throw classify("Failed to acquire token!", e);
         }
     }
 
@@ -123,7 +596,98 @@ public final class EntraIDIdentityProvider implements IdentityProvider {
             Future<IAuthenticationResult> tokenRequest = app.acquireTokenForManagedIdentity(params);
             return tokenRequest.get();
         } catch (Exception e) {
-            throw new RedisEntraIDException("Failed to acquire token!", e);
+            throw classify("Failed to acquire token!", e);
+        }
+    }
+
+    /**
+     * Wraps the failure of an MSAL request, classifying it by the response from Entra ID.
+     * Throttling responses (429, or 5xx with Retry-After) are THROTTLED with the delay Entra ID asked for,
+     * other client errors (4xx, e.g. invalid secret or unknown client) are PERMANENT and everything
+     * else, like timeouts, network and server errors, is TRANSIENT.
+     * @param message
+     * @param e
+     * @return
+     */
+    static RedisEntraIDException classify(String message, Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause()
+                : e;
+        if (cause instanceof MsalThrottlingException) {
+            return new RedisEntraIDException(message, e, Classification.THROTTLED,
+                    ((MsalThrottlingException) cause).retryInMs());
+        }
+        if (cause instanceof MsalServiceException) {
+            MsalServiceException serviceException = (MsalServiceException) cause;
+            int status = serviceException.statusCode() == null ? 0 : serviceException.statusCode();
+            long retryAfter = getRetryAfterInMs(serviceException.headers());
+            if (status == 429 || (status >= 500 && retryAfter > 0)) {
+                return new RedisEntraIDException(message, e, Classification.THROTTLED, retryAfter);
+            }
+            if (status >= 400 && status < 500 && status != 408) {
+                return new RedisEntraIDException(message, e, Classification.PERMANENT, 0);
+            }
+        }
+        return new RedisEntraIDException(message, e);
+    }
+
+    private static boolean isInvalidClient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MsalServiceException) {
+                return INVALID_CLIENT.equals(((MsalServiceException) cause).errorCode());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fetches the instance discovery metadata of the authority the way MSAL does.
+     * The response is read completely, leaving the connection in the keep-alive cache for the token
+     * requests to the same host.
+     * @param authority
+     * @param transport
+     * @return the response, or null if the authority does not serve it
+     */
+    private static String fetchInstanceDiscovery(String authority, EntraIDHttpClient transport) {
+        try {
+            URL authorityUrl = new URL(
+                    authority == null ? ConfidentialClientApplication.DEFAULT_AUTHORITY : authority);
+            String[] segments = authorityUrl.getPath().split("/");
+            if (segments.length < 2 || segments[1].isEmpty()) {
+                return null;
+            }
+            String authorizeEndpoint = String.format(AUTHORIZE_ENDPOINT, authorityUrl.getHost(),
+                segments[1]);
+            String body = transport.get(new URL(String.format(INSTANCE_DISCOVERY_URL,
+                authorityUrl.getAuthority(), URLEncoder.encode(authorizeEndpoint, "UTF-8"))));
+            return body != null && body.contains("tenant_discovery_endpoint") ? body : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long getRetryAfterInMs(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey()) || header.getValue() == null
+                    || header.getValue().isEmpty()) {
+                continue;
+            }
+            String value = header.getValue().get(0).trim();
+            try {
+                return Math.max(0, Long.parseLong(value) * 1000);
+            } catch (NumberFormatException e) {
+                try {
+                    long retryAt = ZonedDateTime
+                            .parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+                            .toEpochMilli();
+                    return Math.max(0, retryAt - System.currentTimeMillis());
+                } catch (DateTimeParseException ex) {
+                    return 0;
+                }
+            }
         }
+        return 0;
     }
 }
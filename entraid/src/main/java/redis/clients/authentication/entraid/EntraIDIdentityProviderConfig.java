@@ -7,9 +7,12 @@
 package redis.clients.authentication.entraid;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import com.microsoft.aad.msal4j.IAuthenticationResult;
+import com.microsoft.aad.msal4j.IHttpClient;
+import com.microsoft.aad.msal4j.ITokenCacheAccessAspect;
 
 import redis.clients.authentication.core.IdentityProvider;
 import redis.clients.authentication.core.IdentityProviderConfig;
@@ -17,13 +20,95 @@ import redis.clients.authentication.core.IdentityProviderConfig;
 public final class EntraIDIdentityProviderConfig implements IdentityProviderConfig {
 
     private final Supplier<IdentityProvider> providerSupplier;
+    private IdentityProvider provider;
+    private CompletableFuture<Long> warmUp;
+    private CircuitBreaker.Policy circuitBreakerPolicy;
+    private boolean offHeapTokens;
+    private TokenValidator tokenValidator;
 
     public EntraIDIdentityProviderConfig(ServicePrincipalInfo info, Set<String> scopes, int timeout) {
-        providerSupplier = () -> new EntraIDIdentityProvider(info, scopes, timeout);
+        this(info, scopes, timeout, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     */
+    public EntraIDIdentityProviderConfig(ServicePrincipalInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient) {
+        this(info, scopes, timeout, httpClient, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     * @param tokenCache token cache serving the initial requests of the provider, null to always
+     * request a new token
+     */
+    public EntraIDIdentityProviderConfig(ServicePrincipalInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, ITokenCacheAccessAspect tokenCache) {
+        providerSupplier = () -> new EntraIDIdentityProvider(info, scopes, timeout, httpClient,
+                tokenCache);
     }
 
     public EntraIDIdentityProviderConfig(ManagedIdentityInfo info, Set<String> scopes, int timeout) {
-        providerSupplier = () -> new EntraIDIdentityProvider(info, scopes, timeout);
+        this(info, scopes, timeout, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     */
+    public EntraIDIdentityProviderConfig(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient) {
+        this(info, scopes, timeout, httpClient, false);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     * @param useTokenCache whether the initial requests of the provider are served from the token cache
+     */
+    public EntraIDIdentityProviderConfig(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache) {
+        this(info, scopes, timeout, httpClient, useTokenCache, 0);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     * @param useTokenCache whether the initial requests of the provider are served from the token cache
+     * @param probeTimeoutInMs connect timeout of the {@link ManagedIdentityProbe}, 0 not to probe
+     */
+    public EntraIDIdentityProviderConfig(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache, int probeTimeoutInMs) {
+        this(info, scopes, timeout, httpClient, useTokenCache, probeTimeoutInMs, null);
+    }
+
+    /**
+     * @param info
+     * @param scopes
+     * @param timeout
+     * @param httpClient shared by all the providers of this config, null to use the default of MSAL
+     * @param useTokenCache whether the initial requests of the provider are served from the token cache
+     * @param probeTimeoutInMs connect timeout of the {@link ManagedIdentityProbe}, 0 not to probe
+     * @param probeEndpoint endpoint the probe connects to, null for the IMDS endpoint of this host
+     */
+    public EntraIDIdentityProviderConfig(ManagedIdentityInfo info, Set<String> scopes, int timeout,
+            IHttpClient httpClient, boolean useTokenCache, int probeTimeoutInMs,
+            String probeEndpoint) {
+        providerSupplier = () -> new EntraIDIdentityProvider(info, scopes, timeout, httpClient,
+                useTokenCache, probeTimeoutInMs, probeEndpoint);
     }
 
     public EntraIDIdentityProviderConfig(
@@ -31,9 +116,95 @@ public final class EntraIDIdentityProviderConfig implements IdentityProviderConf
         providerSupplier = () -> new EntraIDIdentityProvider(customEntraIdAuthenticationSupplier);
     }
 
+    /**
+     * Makes the provider of this config use the circuit breaker of its endpoint.
+     * See {@link EntraIDIdentityProvider#useCircuitBreaker(CircuitBreaker.Policy)}.
+     * @param policy
+     */
+    public synchronized void useCircuitBreaker(CircuitBreaker.Policy policy) {
+        circuitBreakerPolicy = policy;
+        if (provider instanceof EntraIDIdentityProvider) {
+            ((EntraIDIdentityProvider) provider).useCircuitBreaker(policy);
+        }
+    }
+
+    /**
+     * Makes the provider of this config keep the value of its tokens off the heap.
+     * See {@link EntraIDIdentityProvider#useOffHeapTokens(boolean)}.
+     * @param offHeapTokens
+     */
+    public synchronized void useOffHeapTokens(boolean offHeapTokens) {
+        this.offHeapTokens = offHeapTokens;
+        if (provider instanceof EntraIDIdentityProvider) {
+            ((EntraIDIdentityProvider) provider).useOffHeapTokens(offHeapTokens);
+        }
+    }
+
+    /**
+     * Makes the provider of this config validate its tokens.
+     * See {@link EntraIDIdentityProvider#useTokenValidator(TokenValidator)}.
+     * @param tokenValidator
+     */
+    public synchronized void useTokenValidator(TokenValidator tokenValidator) {
+        this.tokenValidator = tokenValidator;
+        if (provider instanceof EntraIDIdentityProvider) {
+            ((EntraIDIdentityProvider) provider).useTokenValidator(tokenValidator);
+        }
+    }
+
+    /**
+     * Warms up the provider of this config on a background thread.
+     * See {@link EntraIDIdentityProvider#warmUp()}.
+     * @return the time the warm up took in milliseconds, reported apart from the token requests
+     */
+    public synchronized CompletableFuture<Long> warmUp() {
+        if (warmUp == null) {
+            IdentityProvider identityProvider = getProvider();
+            if (!(identityProvider instanceof EntraIDIdentityProvider)) {
+                warmUp = CompletableFuture.completedFuture(0L);
+                return warmUp;
+            }
+            EntraIDIdentityProvider entraIDProvider = (EntraIDIdentityProvider) identityProvider;
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    future.complete(entraIDProvider.warmUp());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, "entraid-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+            warmUp = future;
+        }
+        return warmUp;
+    }
+
+    /**
+     * @return the warm up started by {@link #warmUp()}, null if it was not started
+     */
+    public synchronized CompletableFuture<Long> getWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Returns the provider of this config. It is created on the first call and shared by every caller
+     * after that, so that all the connection pools using this config share one MSAL application, HTTP
+     * transport and authority metadata.
+     */
     @Override
-    public IdentityProvider getProvider() {
-        IdentityProvider identityProvider = providerSupplier.get();
-        return identityProvider;
+    public synchronized IdentityProvider getProvider() {
+        if (provider == null) {
+            provider = providerSupplier.get();
+            if (provider instanceof EntraIDIdentityProvider) {
+                EntraIDIdentityProvider entraIDProvider = (EntraIDIdentityProvider) provider;
+                if (circuitBreakerPolicy != null) {
+                    entraIDProvider.useCircuitBreaker(circuitBreakerPolicy);
+                }
+                entraIDProvider.useOffHeapTokens(offHeapTokens);
+                entraIDProvider.useTokenValidator(tokenValidator);
+            }
+        }
+        return provider;
     }
 }
@@ -6,13 +6,22 @@
  */
 package redis.clients.authentication.entraid;
 
+import java.net.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
 
 import com.microsoft.aad.msal4j.IAuthenticationResult;
+import com.microsoft.aad.msal4j.IHttpClient;
+import com.microsoft.aad.msal4j.ITokenCacheAccessAspect;
 
+import redis.clients.authentication.core.FailoverIdentityProvider;
+import redis.clients.authentication.core.FailoverIdentityProviderConfig;
 import redis.clients.authentication.core.TokenAuthConfig;
 import redis.clients.authentication.core.TokenManagerConfig;
 import redis.clients.authentication.entraid.ManagedIdentityInfo.UserManagedIdentityType;
@@ -25,17 +34,40 @@ public class EntraIDTokenAuthConfigBuilder
     public static final int DEFAULT_TOKEN_REQUEST_EXECUTION_TIMEOUT_IN_MS = 1000;
     public static final int DEFAULT_MAX_ATTEMPTS_TO_RETRY = 5;
     public static final int DEFAULT_DELAY_IN_MS_TO_RETRY = 100;
+    public static final String DEFAULT_AUTHORITY_HOST = "https://login.microsoftonline.com/";
+
+    private static final String AZURE_CLIENT_ID = "AZURE_CLIENT_ID";
+    private static final String AZURE_TENANT_ID = "AZURE_TENANT_ID";
+    private static final String AZURE_AUTHORITY_HOST = "AZURE_AUTHORITY_HOST";
+    private static final String AZURE_FEDERATED_TOKEN_FILE = "AZURE_FEDERATED_TOKEN_FILE";
 
     private String clientId;
     private String secret;
     private PrivateKey key;
     private X509Certificate cert;
+    private Path federatedTokenFile;
+    private CredentialSource credentialSource;
     private String authority;
     private Set<String> scopes;
     private ServicePrincipalAccess accessWith;
     private ManagedIdentityInfo mii;
     private int tokenRequestExecTimeoutInMs;
     private Supplier<IAuthenticationResult> customEntraIdAuthenticationSupplier;
+    private boolean warmUp;
+    private IHttpClient httpClient;
+    private int connectTimeoutInMs;
+    private int readTimeoutInMs;
+    private Proxy proxy;
+    private int maxConcurrentRequests;
+    private boolean useTokenCache;
+    private ITokenCacheAccessAspect tokenCacheAccessAspect;
+    private CircuitBreaker.Policy circuitBreakerPolicy;
+    private long failoverCoolDownInMs = -1;
+    private boolean failoverRacing;
+    private int managedIdentityProbeTimeoutInMs;
+    private String managedIdentityProbeEndpoint;
+    private boolean offHeapTokens;
+    private TokenValidator tokenValidator;
 
     public EntraIDTokenAuthConfigBuilder() {
         this.expirationRefreshRatio(DEFAULT_EXPIRATION_REFRESH_RATIO)
@@ -63,6 +95,55 @@ public class EntraIDTokenAuthConfigBuilder
         return this;
     }
 
+    /**
+     * Authenticates the service principal with the federated token read from the given file, e.g. the
+     * service account token Kubernetes projects for Azure workload identity. The file is read again
+     * only after it changed on disk.
+     * @param federatedTokenFile
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder federatedTokenFile(Path federatedTokenFile) {
+        this.federatedTokenFile = federatedTokenFile;
+        this.accessWith = ServicePrincipalAccess.WithFederatedToken;
+        return this;
+    }
+
+    /**
+     * Authenticates the service principal with the credential of the given source, which can be
+     * rotated without restarting the token manager, see {@link CredentialSource}.
+     * @param credentialSource
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder credentialSource(CredentialSource credentialSource) {
+        this.credentialSource = credentialSource;
+        this.accessWith = ServicePrincipalAccess.WithCredentialSource;
+        return this;
+    }
+
+    /**
+     * Configures Azure workload identity from the environment the workload identity webhook sets up:
+     * the client id, tenant, authority host and federated token file. Values that are not set in the
+     * environment are left as they are.
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder workloadIdentity() {
+        String envClientId = System.getenv(AZURE_CLIENT_ID);
+        String tenantId = System.getenv(AZURE_TENANT_ID);
+        String authorityHost = System.getenv(AZURE_AUTHORITY_HOST);
+        String tokenFile = System.getenv(AZURE_FEDERATED_TOKEN_FILE);
+        if (envClientId != null) {
+            clientId = envClientId;
+        }
+        if (tenantId != null) {
+            String host = authorityHost != null ? authorityHost : DEFAULT_AUTHORITY_HOST;
+            authority = (host.endsWith("/") ? host : host + "/") + tenantId + "/";
+        }
+        if (tokenFile != null) {
+            federatedTokenFile(Paths.get(tokenFile));
+        }
+        return this;
+    }
+
     public EntraIDTokenAuthConfigBuilder authority(String authority) {
         this.authority = authority;
         return this;
@@ -90,6 +171,170 @@ public class EntraIDTokenAuthConfigBuilder
         return this;
     }
 
+    /**
+     * Enables warming up the identity provider in the background once the config is built, so that the
+     * first token request does not pay for creating the MSAL client and resolving the authority.
+     * See {@link EntraIDIdentityProviderConfig#warmUp()}.
+     * @param warmUp
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder warmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+        return this;
+    }
+
+    /**
+     * Sets the HTTP transport all the identity providers built from this config share.
+     * It takes precedence over the connection settings of this builder.
+     * @param httpClient
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder httpClient(IHttpClient httpClient) {
+        this.httpClient = httpClient;
+        return this;
+    }
+
+    /**
+     * Sets the connect timeout of the requests to Entra ID, no timeout by default.
+     * Setting any connection setting makes the providers share an {@link EntraIDHttpClient}.
+     * @param connectTimeoutInMs
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder connectTimeoutInMs(int connectTimeoutInMs) {
+        this.connectTimeoutInMs = connectTimeoutInMs;
+        return this;
+    }
+
+    /**
+     * Sets the read timeout of the requests to Entra ID, tokenRequestExecTimeoutInMs by default.
+     * @param readTimeoutInMs
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder readTimeoutInMs(int readTimeoutInMs) {
+        this.readTimeoutInMs = readTimeoutInMs;
+        return this;
+    }
+
+    public EntraIDTokenAuthConfigBuilder proxy(Proxy proxy) {
+        this.proxy = proxy;
+        return this;
+    }
+
+    /**
+     * Bounds the number of requests to Entra ID in flight at the same time, no limit by default.
+     * It is not a connection pool, connections are kept alive by the JDK, see
+     * {@link EntraIDHttpClient}.
+     * @param maxConcurrentRequests
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder maxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    /**
+     * Enables serving the initial token of each token manager from the MSAL token cache, so that new
+     * managers and pools of the same identity reuse a valid token instead of requesting one.
+     * Scheduled renewals always request a new token.
+     * Service principals share an in-memory cache per identity unless a tokenCacheAccessAspect is set,
+     * managed identities share the cache of MSAL.
+     * @param useTokenCache
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder useTokenCache(boolean useTokenCache) {
+        this.useTokenCache = useTokenCache;
+        return this;
+    }
+
+    /**
+     * Sets the serialization hooks of the token cache of service principals, enables the token cache.
+     * @param tokenCacheAccessAspect
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder tokenCacheAccessAspect(
+            ITokenCacheAccessAspect tokenCacheAccessAspect) {
+        this.tokenCacheAccessAspect = tokenCacheAccessAspect;
+        this.useTokenCache = tokenCacheAccessAspect != null || useTokenCache;
+        return this;
+    }
+
+    /**
+     * Enables the circuit breaker shared by all the identity providers sending their requests to the
+     * same endpoint, see {@link CircuitBreaker}.
+     * @param failureThreshold
+     * @param slowCallThresholdInMs
+     * @param openDurationInMs
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder circuitBreaker(int failureThreshold,
+            int slowCallThresholdInMs, int openDurationInMs) {
+        this.circuitBreakerPolicy = new CircuitBreaker.Policy(failureThreshold,
+                slowCallThresholdInMs, openDurationInMs);
+        return this;
+    }
+
+    /**
+     * Keeps the value of the tokens off the heap, where it is wiped once the token is renewed and
+     * expired, see {@link redis.clients.authentication.core.OffHeapToken}.
+     * @param offHeapTokens
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder offHeapTokens(boolean offHeapTokens) {
+        this.offHeapTokens = offHeapTokens;
+        return this;
+    }
+
+    /**
+     * Validates the signature, issuer and audience of each token before it is handed to the token
+     * listeners, see {@link TokenValidator}.
+     * @param tokenValidator
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder tokenValidator(TokenValidator tokenValidator) {
+        this.tokenValidator = tokenValidator;
+        return this;
+    }
+
+    /**
+     * Probes the IMDS endpoint with the given connect timeout before the initial token request of each
+     * token manager of a managed identity, which then fails right away where there is no IMDS, see
+     * {@link ManagedIdentityProbe}.
+     * @param managedIdentityProbeTimeoutInMs
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder managedIdentityProbeTimeoutInMs(
+            int managedIdentityProbeTimeoutInMs) {
+        this.managedIdentityProbeTimeoutInMs = managedIdentityProbeTimeoutInMs;
+        return this;
+    }
+
+    /**
+     * Makes the IMDS probe connect to the given endpoint instead of the IMDS endpoint of this host,
+     * e.g. where the httpClient sends the IMDS requests, see
+     * {@link #managedIdentityProbeTimeoutInMs(int)}.
+     * @param managedIdentityProbeEndpoint e.g. http://localhost:8080
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder managedIdentityProbeEndpoint(
+            String managedIdentityProbeEndpoint) {
+        this.managedIdentityProbeEndpoint = managedIdentityProbeEndpoint;
+        return this;
+    }
+
+    /**
+     * Allows both a managed identity and a service principal, requesting tokens with the managed
+     * identity and falling back to the service principal where it fails, see
+     * {@link FailoverIdentityProvider}.
+     * @param coolDownInMs time a failed one is skipped for
+     * @param racing whether both are requested at once until one of them succeeds
+     * @return
+     */
+    public EntraIDTokenAuthConfigBuilder failover(long coolDownInMs, boolean racing) {
+        this.failoverCoolDownInMs = coolDownInMs;
+        this.failoverRacing = racing;
+        return this;
+    }
+
     @Override
     public EntraIDTokenAuthConfigBuilder tokenRequestExecTimeoutInMs(
             int tokenRequestExecTimeoutInMs) {
@@ -100,7 +345,8 @@ public class EntraIDTokenAuthConfigBuilder
 
     public TokenAuthConfig build() {
         ServicePrincipalInfo spi = null;
-        if (key != null || cert != null || secret != null) {
+        if (key != null || cert != null || secret != null || federatedTokenFile != null
+                || credentialSource != null) {
             switch (accessWith) {
             case WithCert:
                 spi = new ServicePrincipalInfo(clientId, key, cert, authority);
@@ -108,29 +354,69 @@ public class EntraIDTokenAuthConfigBuilder
             case WithSecret:
                 spi = new ServicePrincipalInfo(clientId, secret, authority);
                 break;
+            case WithFederatedToken:
+                spi = ServicePrincipalInfo.withFederatedTokenFile(clientId, federatedTokenFile,
+                        authority);
+                break;
+            case WithCredentialSource:
+                spi = ServicePrincipalInfo.withCredentialSource(clientId, credentialSource,
+                        authority);
+                break;
             }
         }
-        if (spi != null && mii != null) {
+        if (spi != null && mii != null && failoverCoolDownInMs < 0) {
             throw new RedisEntraIDException(
-                    "Cannot have both ServicePrincipal and ManagedIdentity!");
+                    "Cannot have both ServicePrincipal and ManagedIdentity without failover!");
         }
         if (this.customEntraIdAuthenticationSupplier != null && (spi != null || mii != null)) {
             throw new RedisEntraIDException(
                     "Cannot have both customEntraIdAuthenticationSupplier and ServicePrincipal/ManagedIdentity!");
         }
-        if (spi != null) {
-            super.identityProviderConfig(
-                new EntraIDIdentityProviderConfig(spi, scopes, tokenRequestExecTimeoutInMs));
+        IHttpClient transport = httpClient;
+        if (transport == null && (connectTimeoutInMs > 0 || readTimeoutInMs > 0 || proxy != null
+                || maxConcurrentRequests > 0)) {
+            transport = new EntraIDHttpClient(connectTimeoutInMs,
+                    readTimeoutInMs > 0 ? readTimeoutInMs : tokenRequestExecTimeoutInMs, proxy, null,
+                    maxConcurrentRequests);
         }
+        List<EntraIDIdentityProviderConfig> identityProviderConfigs = new ArrayList<>();
         if (mii != null) {
-            super.identityProviderConfig(
-                new EntraIDIdentityProviderConfig(mii, scopes, tokenRequestExecTimeoutInMs));
+            identityProviderConfigs.add(new EntraIDIdentityProviderConfig(mii, scopes,
+                    tokenRequestExecTimeoutInMs, transport, useTokenCache,
+                    managedIdentityProbeTimeoutInMs, managedIdentityProbeEndpoint));
+        }
+        if (spi != null) {
+            ITokenCacheAccessAspect tokenCache = tokenCacheAccessAspect;
+            if (tokenCache == null && useTokenCache) {
+                tokenCache = SharedTokenCache.forIdentity(EntraIDIdentityProvider.identityOf(spi));
+            }
+            identityProviderConfigs.add(new EntraIDIdentityProviderConfig(spi, scopes,
+                    tokenRequestExecTimeoutInMs, transport, tokenCache));
         }
         if (customEntraIdAuthenticationSupplier != null) {
-            super.identityProviderConfig(
+            identityProviderConfigs.add(
                 new EntraIDIdentityProviderConfig(customEntraIdAuthenticationSupplier));
         }
-        return super.build();
+        for (EntraIDIdentityProviderConfig identityProviderConfig : identityProviderConfigs) {
+            if (circuitBreakerPolicy != null) {
+                identityProviderConfig.useCircuitBreaker(circuitBreakerPolicy);
+            }
+            identityProviderConfig.useOffHeapTokens(offHeapTokens);
+            identityProviderConfig.useTokenValidator(tokenValidator);
+        }
+        if (identityProviderConfigs.size() == 1) {
+            super.identityProviderConfig(identityProviderConfigs.get(0));
+        } else if (identityProviderConfigs.size() > 1) {
+            super.identityProviderConfig(new FailoverIdentityProviderConfig(
+                    new ArrayList<>(identityProviderConfigs), failoverCoolDownInMs, failoverRacing));
+        }
+        TokenAuthConfig config = super.build();
+        if (warmUp) {
+            for (EntraIDIdentityProviderConfig identityProviderConfig : identityProviderConfigs) {
+                identityProviderConfig.warmUp();
+            }
+        }
+        return config;
     }
 
     @Override
@@ -139,9 +425,14 @@ public class EntraIDTokenAuthConfigBuilder
         secret = null;
         key = null;
         cert = null;
+        federatedTokenFile = null;
+        credentialSource = null;
         authority = null;
         scopes = null;
         customEntraIdAuthenticationSupplier = null;
+        httpClient = null;
+        proxy = null;
+        tokenCacheAccessAspect = null;
     }
 
     public static EntraIDTokenAuthConfigBuilder builder() {
@@ -158,17 +449,40 @@ public class EntraIDTokenAuthConfigBuilder
                 .tokenRequestExecTimeoutInMs(tokenManagerConfig.getTokenRequestExecTimeoutInMs())
                 .maxAttemptsToRetry(tokenManagerConfig.getRetryPolicy().getMaxAttempts())
                 .delayInMsToRetry(tokenManagerConfig.getRetryPolicy().getdelayInMs())
+                .renewalDeadlineInMs(tokenManagerConfig.getRetryPolicy().getDeadlineInMs())
+                .renewalCoalescingWindowInMs(tokenManagerConfig.getRenewalCoalescingWindowInMs())
                 .identityProviderConfig(tokenAuthConfig.getIdentityProviderConfig());
+        if (tokenManagerConfig.getStandbyPolicy() != null) {
+            builder.standbyToken(tokenManagerConfig.getStandbyPolicy().getRefillRatio(),
+                tokenManagerConfig.getStandbyPolicy().getJitterInMs());
+        }
 
         builder.accessWith = sample.accessWith;
         builder.authority = sample.authority;
         builder.cert = sample.cert;
+        builder.federatedTokenFile = sample.federatedTokenFile;
+        builder.credentialSource = sample.credentialSource;
         builder.clientId = sample.clientId;
         builder.customEntraIdAuthenticationSupplier = sample.customEntraIdAuthenticationSupplier;
         builder.key = sample.key;
         builder.mii = sample.mii;
         builder.scopes = sample.scopes;
         builder.secret = sample.secret;
+        builder.warmUp = sample.warmUp;
+        builder.httpClient = sample.httpClient;
+        builder.connectTimeoutInMs = sample.connectTimeoutInMs;
+        builder.readTimeoutInMs = sample.readTimeoutInMs;
+        builder.proxy = sample.proxy;
+        builder.maxConcurrentRequests = sample.maxConcurrentRequests;
+        builder.useTokenCache = sample.useTokenCache;
+        builder.tokenCacheAccessAspect = sample.tokenCacheAccessAspect;
+        builder.circuitBreakerPolicy = sample.circuitBreakerPolicy;
+        builder.failoverCoolDownInMs = sample.failoverCoolDownInMs;
+        builder.failoverRacing = sample.failoverRacing;
+        builder.managedIdentityProbeTimeoutInMs = sample.managedIdentityProbeTimeoutInMs;
+        builder.managedIdentityProbeEndpoint = sample.managedIdentityProbeEndpoint;
+        builder.offHeapTokens = sample.offHeapTokens;
+        builder.tokenValidator = sample.tokenValidator;
         return builder;
     }
 }
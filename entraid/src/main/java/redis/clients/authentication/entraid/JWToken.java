@@ -6,12 +6,17 @@
  */
 package redis.clients.authentication.entraid;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.function.BiFunction;
 
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.JWT;
 
+import redis.clients.authentication.core.OffHeapToken;
 import redis.clients.authentication.core.Token;
+import redis.clients.authentication.core.TokenClaims;
 
 public class JWToken implements Token {
     private final String user;
@@ -19,6 +24,7 @@ public class JWToken implements Token {
     private final long expiresAt;
     private final long receivedAt;
     private final BiFunction<String, Class<?>, ?> claimQuery;
+    private volatile TokenClaims claims;
 
     public JWToken(String token) {
         this.token = token;
@@ -29,6 +35,23 @@ public class JWToken implements Token {
         this.claimQuery = (key, clazz) -> jwt.getClaim(key).as(clazz);
     }
 
+    /**
+     * Creates a token keeping the given value off the heap, see {@link OffHeapToken}. Only the claims of
+     * the decoded token are kept on the heap, not its encoded parts.
+     * @param token
+     * @return
+     */
+    public static OffHeapToken offHeap(String token) {
+        DecodedJWT jwt = JWT.decode(token);
+        Map<String, Claim> claims = jwt.getClaims();
+        return new OffHeapToken(jwt.getClaim("oid").asString(),
+                token.getBytes(StandardCharsets.UTF_8), jwt.getExpiresAt().getTime(),
+                System.currentTimeMillis(), (key, clazz) -> {
+                    Claim claim = claims.get(key);
+                    return claim == null ? null : claim.as(clazz);
+                });
+    }
+
     @Override
     public boolean isExpired() {
         return System.currentTimeMillis() > expiresAt;
@@ -79,6 +102,14 @@ public class JWToken implements Token {
         return token.equals(that);
     }
 
+    @Override
+    public TokenClaims getClaims() {
+        if (claims == null) {
+            claims = TokenClaims.of(this);
+        }
+        return claims;
+    }
+
     @Override
     public <T> T tryGet(String key, Class<T> clazz) {
         return (T) claimQuery.apply(key, clazz);
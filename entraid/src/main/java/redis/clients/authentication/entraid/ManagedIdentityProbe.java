@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.aad.msal4j.ManagedIdentityApplication;
+import com.microsoft.aad.msal4j.ManagedIdentitySourceType;
+
+/**
+ * Checks whether the IMDS endpoint managed identity tokens are requested from can be connected to at
+ * all, with a short connect timeout, so that on a host without IMDS the first token request fails in
+ * milliseconds instead of after MSAL has waited out its read timeout on every attempt.
+ * <p>
+ * Results are kept per endpoint. A reachable endpoint, or one that can never be connected to, e.g. a
+ * malformed one, is not probed again. One that could not be connected to, e.g. as the connection was
+ * refused or timed out, is probed again every time, as the network may just not be up yet. The last
+ * result is available as a diagnostic through {@link #lastResult()}.
+ * <p>
+ * The endpoint is the one MSAL requests IMDS at on this host, unless the provider was given one, e.g.
+ * where its transport sends the IMDS requests elsewhere.
+ */
+public final class ManagedIdentityProbe {
+
+    private static final String POD_IDENTITY_AUTHORITY_HOST = "AZURE_POD_IDENTITY_AUTHORITY_HOST";
+    private static final String DEFAULT_IMDS_ENDPOINT = "http://169.254.169.254";
+
+    private static final ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<>();
+
+    private ManagedIdentityProbe() {
+    }
+
+    public static final class Result {
+        private final String endpoint;
+        private final boolean reachable;
+        private final boolean transientFailure;
+        private final long probedAt;
+        private final long durationInMs;
+        private final String failure;
+
+        private Result(String endpoint, boolean reachable, boolean transientFailure, long probedAt,
+                long durationInMs, String failure) {
+            this.endpoint = endpoint;
+            this.reachable = reachable;
+            this.transientFailure = transientFailure;
+            this.probedAt = probedAt;
+            this.durationInMs = durationInMs;
+            this.failure = failure;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public boolean isReachable() {
+            return reachable;
+        }
+
+        /**
+         * @return whether the endpoint could not be connected to for a reason that may go away, e.g.
+         * the connection was refused or timed out, rather than never
+         */
+        public boolean isTransientFailure() {
+            return transientFailure;
+        }
+
+        public long getProbedAt() {
+            return probedAt;
+        }
+
+        public long getDurationInMs() {
+            return durationInMs;
+        }
+
+        /**
+         * @return why the endpoint could not be connected to, null if it could
+         */
+        public String getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return "ManagedIdentityProbe.Result{endpoint=" + endpoint + ", reachable=" + reachable
+                    + ", durationInMs=" + durationInMs
+                    + (failure == null ? "" : ", failure=" + failure) + "}";
+        }
+    }
+
+    /**
+     * Returns the last result of probing the IMDS endpoint of this host, null if it was not probed or
+     * managed identity tokens do not come from IMDS here
+     * @return
+     */
+    public static Result lastResult() {
+        return lastResult(null);
+    }
+
+    /**
+     * Returns the last result of probing the given endpoint, null if it was not probed
+     * @param endpoint the endpoint, or null for the IMDS endpoint of this host
+     * @return
+     */
+    public static Result lastResult(String endpoint) {
+        if (endpoint == null) {
+            endpoint = environmentEndpoint();
+        }
+        return endpoint == null ? null : results.get(endpoint);
+    }
+
+    /**
+     * Returns the result of probing the given endpoint, probing it if there is no usable result yet
+     * @param endpoint the endpoint, or null for the IMDS endpoint of this host
+     * @param connectTimeoutInMs
+     * @return the result, null if no endpoint was given and managed identity tokens do not come from
+     * IMDS here
+     */
+    static Result probe(String endpoint, int connectTimeoutInMs) {
+        if (endpoint == null) {
+            endpoint = environmentEndpoint();
+            if (endpoint == null) {
+                return null;
+            }
+        }
+        Result result = results.get(endpoint);
+        if (result != null && !result.transientFailure) {
+            return result;
+        }
+        result = connect(endpoint, connectTimeoutInMs);
+        results.put(endpoint, result);
+        return result;
+    }
+
+    private static Result connect(String endpoint, int connectTimeoutInMs) {
+        long startedAt = System.currentTimeMillis();
+        try (Socket socket = new Socket()) {
+            URI uri = URI.create(endpoint);
+            int port = uri.getPort() > 0 ? uri.getPort()
+                    : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            socket.connect(new InetSocketAddress(uri.getHost(), port), connectTimeoutInMs);
+            return new Result(endpoint, true, false, startedAt,
+                    System.currentTimeMillis() - startedAt, null);
+        } catch (IOException e) {
+            return new Result(endpoint, false, true, startedAt,
+                    System.currentTimeMillis() - startedAt, e.toString());
+        } catch (IllegalArgumentException e) {
+            // a malformed endpoint, or one without a host
+            return new Result(endpoint, false, false, startedAt,
+                    System.currentTimeMillis() - startedAt, e.toString());
+        }
+    }
+
+    private static String environmentEndpoint() {
+        ManagedIdentitySourceType source = ManagedIdentityApplication.getManagedIdentitySource();
+        if (source != ManagedIdentitySourceType.IMDS
+                && source != ManagedIdentitySourceType.DEFAULT_TO_IMDS) {
+            return null;
+        }
+        String podIdentityHost = System.getenv(POD_IDENTITY_AUTHORITY_HOST);
+        return podIdentityHost == null || podIdentityHost.trim().isEmpty() ? DEFAULT_IMDS_ENDPOINT
+                : podIdentityHost;
+    }
+}
@@ -6,15 +6,20 @@
  */
 package redis.clients.authentication.entraid;
 
-import redis.clients.authentication.core.AuthXException;
+import redis.clients.authentication.core.IdentityProviderException;
 
-public class RedisEntraIDException extends AuthXException {
+public class RedisEntraIDException extends IdentityProviderException {
 
     public RedisEntraIDException(String message) {
-        super(message);
+        super(message, null);
     }
 
     public RedisEntraIDException(String message, Exception cause) {
         super(message, cause);
     }
+
+    public RedisEntraIDException(String message, Exception cause, Classification classification,
+            long retryAfterInMs) {
+        super(message, cause, classification, retryAfterInMs);
+    }
 }
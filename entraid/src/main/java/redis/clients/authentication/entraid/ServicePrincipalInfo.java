@@ -6,19 +6,22 @@
  */
 package redis.clients.authentication.entraid;
 
+import java.nio.file.Path;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 
 public class ServicePrincipalInfo {
 
     public enum ServicePrincipalAccess {
-        WithSecret, WithCert,
+        WithSecret, WithCert, WithFederatedToken, WithCredentialSource,
     }
 
     private String clientId;
     private String secret;
     private PrivateKey key;
     private X509Certificate cert;
+    private Path federatedTokenFile;
+    private CredentialSource credentialSource;
     private String authority;
     private ServicePrincipalAccess accessWith;
 
@@ -38,6 +41,45 @@ public class ServicePrincipalInfo {
         accessWith = ServicePrincipalAccess.WithCert;
     }
 
+    private ServicePrincipalInfo(String clientId, String authority,
+            ServicePrincipalAccess accessWith) {
+        this.clientId = clientId;
+        this.authority = authority;
+        this.accessWith = accessWith;
+    }
+
+    /**
+     * Creates the info of a service principal authenticating with a federated token, e.g. the service
+     * account token Kubernetes projects for Azure workload identity, read from the given file
+     * @param clientId
+     * @param federatedTokenFile
+     * @param authority
+     * @return
+     */
+    public static ServicePrincipalInfo withFederatedTokenFile(String clientId,
+            Path federatedTokenFile, String authority) {
+        ServicePrincipalInfo info = new ServicePrincipalInfo(clientId, authority,
+                ServicePrincipalAccess.WithFederatedToken);
+        info.federatedTokenFile = federatedTokenFile;
+        return info;
+    }
+
+    /**
+     * Creates the info of a service principal authenticating with the credential of the given source,
+     * which may change at runtime
+     * @param clientId
+     * @param credentialSource
+     * @param authority
+     * @return
+     */
+    public static ServicePrincipalInfo withCredentialSource(String clientId,
+            CredentialSource credentialSource, String authority) {
+        ServicePrincipalInfo info = new ServicePrincipalInfo(clientId, authority,
+                ServicePrincipalAccess.WithCredentialSource);
+        info.credentialSource = credentialSource;
+        return info;
+    }
+
     public String getClientId() {
         return clientId;
     }
@@ -54,6 +96,14 @@ public class ServicePrincipalInfo {
         return cert;
     }
 
+    public Path getFederatedTokenFile() {
+        return federatedTokenFile;
+    }
+
+    public CredentialSource getCredentialSource() {
+        return credentialSource;
+    }
+
     public String getAuthority() {
         return authority;
     }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.aad.msal4j.ITokenCacheAccessAspect;
+import com.microsoft.aad.msal4j.ITokenCacheAccessContext;
+
+/**
+ * In-memory MSAL token cache shared by all the client applications of the same identity in this
+ * process, kept in the serialized form MSAL reads and writes around each cache access.
+ * A custom {@link ITokenCacheAccessAspect} can be configured instead to persist the cache elsewhere.
+ */
+final class SharedTokenCache implements ITokenCacheAccessAspect {
+
+    private static final ConcurrentHashMap<String, SharedTokenCache> caches = new ConcurrentHashMap<>();
+
+    private volatile String data;
+
+    private SharedTokenCache() {
+    }
+
+    /**
+     * Returns the cache of the given identity
+     * @param identity
+     * @return
+     */
+    static SharedTokenCache forIdentity(String identity) {
+        return caches.computeIfAbsent(identity, k -> new SharedTokenCache());
+    }
+
+    @Override
+    public void beforeCacheAccess(ITokenCacheAccessContext context) {
+        String current = data;
+        if (current != null) {
+            context.tokenCache().deserialize(current);
+        }
+    }
+
+    @Override
+    public void afterCacheAccess(ITokenCacheAccessContext context) {
+        if (context.hasCacheChanged()) {
+            data = context.tokenCache().serialize();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+/**
+ * Credential source whose credential is replaced by the application, e.g. after it fetched a rotated
+ * secret from a vault. The next token request uses the new credential.
+ */
+public class SwappableCredentialSource implements CredentialSource {
+
+    private volatile Credential credential;
+
+    public SwappableCredentialSource(Credential credential) {
+        this.credential = credential;
+    }
+
+    /**
+     * Replaces the credential used by the next token requests
+     * @param credential
+     */
+    public void swap(Credential credential) {
+        this.credential = credential;
+    }
+
+    @Override
+    public Credential getCredential() {
+        return credential;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the back-off instructions received from Entra ID per identity, so that every provider
+ * requesting tokens for the same identity in this process respects them, not only the one that
+ * got throttled.
+ */
+final class ThrottlingRegistry {
+
+    private static final ConcurrentHashMap<String, Long> throttledUntil = new ConcurrentHashMap<>();
+
+    private ThrottlingRegistry() {
+    }
+
+    /**
+     * Records that requests for the given identity should not be sent for the given duration
+     * @param identity
+     * @param retryAfterInMs
+     */
+    static void throttle(String identity, long retryAfterInMs) {
+        if (identity == null || retryAfterInMs <= 0) {
+            return;
+        }
+        throttledUntil.merge(identity, System.currentTimeMillis() + retryAfterInMs, Math::max);
+    }
+
+    /**
+     * Returns the remaining time in milliseconds requests for the given identity are throttled, 0 if
+     * they are not
+     * @param identity
+     * @return
+     */
+    static long throttledFor(String identity) {
+        if (identity == null) {
+            return 0;
+        }
+        Long until = throttledUntil.get(identity);
+        if (until == null) {
+            return 0;
+        }
+        long remaining = until - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throttledUntil.remove(identity, until);
+            return 0;
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.RSAKeyProvider;
+import com.auth0.jwt.interfaces.Verification;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import redis.clients.authentication.core.IdentityProviderException.Classification;
+import redis.clients.authentication.core.Token;
+
+/**
+ * Verifies the signature, issuer, audience and lifetime of the tokens an identity provider received,
+ * before they are handed to the token listeners, see
+ * {@link EntraIDIdentityProvider#useTokenValidator(TokenValidator)}.
+ * <p>
+ * The signing keys are fetched from the JWKS endpoint of the tenant and kept by their key id. Once they
+ * are older than the refresh interval, they are fetched again on a background thread while the cached
+ * ones are still used. A token signed with a key id that is not cached fetches them right away, e.g.
+ * after the keys were rotated, but an unknown key id or a failed fetch is remembered for
+ * {@link #NEGATIVE_CACHE_IN_MS}, so that it does not fetch them again on every token.
+ * The result of the last validation is kept, so validating the same token again, e.g. one served from
+ * the token cache, only compares it.
+ */
+public final class TokenValidator {
+
+    static final long NEGATIVE_CACHE_IN_MS = 60 * 1000;
+    public static final long DEFAULT_REFRESH_INTERVAL_IN_MS = 60 * 60 * 1000;
+    private static final int DEFAULT_TIMEOUT_IN_MS = 5000;
+    private static final long LEEWAY_IN_SECONDS = 60;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "entraid-jwks-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final URL jwksUrl;
+    private final EntraIDHttpClient httpClient;
+    private final long refreshIntervalInMs;
+    private final JWTVerifier verifier;
+    private final Map<String, Long> unknownKeyIds = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Map<String, RSAPublicKey> keys = Collections.emptyMap();
+    private volatile long fetchedAt;
+    private volatile long fetchFailedAt;
+    private volatile Validation lastValidation;
+
+    private static final class Validation {
+        // SHA-256 of the token, so that its value is not kept
+        private final byte[] digest;
+        private final long expiresAt;
+        private final RedisEntraIDException failure;
+
+        private Validation(byte[] digest, long expiresAt, RedisEntraIDException failure) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+            this.failure = failure;
+        }
+    }
+
+    public TokenValidator(String jwksUri, String issuer, Set<String> audiences) {
+        this(jwksUri, issuer, audiences,
+                new EntraIDHttpClient(DEFAULT_TIMEOUT_IN_MS, DEFAULT_TIMEOUT_IN_MS),
+                DEFAULT_REFRESH_INTERVAL_IN_MS);
+    }
+
+    /**
+     * @param jwksUri
+     * @param issuer null not to verify the issuer
+     * @param audiences any of which a token has to be issued for, empty not to verify the audience
+     * @param httpClient
+     * @param refreshIntervalInMs
+     */
+    public TokenValidator(String jwksUri, String issuer, Set<String> audiences,
+            EntraIDHttpClient httpClient, long refreshIntervalInMs) {
+        try {
+            this.jwksUrl = new URL(jwksUri);
+        } catch (MalformedURLException e) {
+            throw new RedisEntraIDException("Invalid JWKS URI!", e);
+        }
+        this.httpClient = httpClient;
+        this.refreshIntervalInMs = refreshIntervalInMs;
+        Verification verification = JWT.require(Algorithm.RSA256(new KeyProvider()))
+                .acceptLeeway(LEEWAY_IN_SECONDS);
+        if (issuer != null) {
+            verification.withIssuer(issuer);
+        }
+        if (audiences != null && !audiences.isEmpty()) {
+            verification.withAnyOfAudience(audiences.toArray(new String[0]));
+        }
+        this.verifier = verification.build();
+    }
+
+    /**
+     * Creates a validator for the v2.0 tokens of the given authority, e.g.
+     * https://login.microsoftonline.com/{tenant}/, with the issuer and keys its OpenID metadata
+     * publishes. The issuer is not verified for a multi-tenant authority, e.g. common, whose metadata
+     * has a placeholder for the tenant.
+     * @param authority
+     * @param audiences
+     * @return
+     * @throws RedisEntraIDException classified as transient if the metadata could not be fetched
+     */
+    public static TokenValidator forAuthority(String authority, Set<String> audiences) {
+        String base = authority.endsWith("/") ? authority : authority + "/";
+        EntraIDHttpClient httpClient = new EntraIDHttpClient(DEFAULT_TIMEOUT_IN_MS,
+                DEFAULT_TIMEOUT_IN_MS);
+        String metadataUri = base + "v2.0/.well-known/openid-configuration";
+        JsonNode metadata;
+        try {
+            String body = httpClient.get(new URL(metadataUri));
+            if (body == null) {
+                throw new IOException("No metadata from " + metadataUri);
+            }
+            metadata = mapper.readTree(body);
+        } catch (IOException e) {
+            throw new RedisEntraIDException("Failed to fetch the OpenID metadata!", e,
+                    Classification.TRANSIENT, 0);
+        }
+        String jwksUri = metadata.path("jwks_uri").asText(null);
+        if (jwksUri == null) {
+            throw new RedisEntraIDException("No jwks_uri in the OpenID metadata of " + authority);
+        }
+        String issuer = metadata.path("issuer").asText(null);
+        if (issuer != null && issuer.contains("{tenantid}")) {
+            issuer = null;
+        }
+        return new TokenValidator(jwksUri, issuer, audiences, httpClient,
+                DEFAULT_REFRESH_INTERVAL_IN_MS);
+    }
+
+    /**
+     * Validates the given token. Only if it is not the token validated last, its value is read with
+     * {@link Token#getValue()} to verify it, which copies the value of an off heap token to the heap,
+     * see {@link #validate(String)}.
+     * @param token
+     * @throws RedisEntraIDException classified as transient if the keys could not be fetched, as
+     * permanent if the token is not valid
+     */
+    public void validate(Token token) {
+        byte[] digest = digest(token.getValueBytes());
+        if (!validatedLast(digest)) {
+            verify(token.getValue(), digest);
+        }
+    }
+
+    /**
+     * Validates the given token, e.g. the access token as an identity provider received it, before it
+     * is kept off the heap.
+     * @param token
+     * @throws RedisEntraIDException classified as transient if the keys could not be fetched, as
+     * permanent if the token is not valid
+     */
+    public void validate(String token) {
+        byte[] digest = digest(ByteBuffer.wrap(token.getBytes(StandardCharsets.UTF_8)));
+        if (!validatedLast(digest)) {
+            verify(token, digest);
+        }
+    }
+
+    /**
+     * Returns true if the token with the given digest was validated last and is still valid, throws
+     * if it was not valid
+     */
+    private boolean validatedLast(byte[] digest) {
+        Validation last = lastValidation;
+        if (last == null || !MessageDigest.isEqual(last.digest, digest)) {
+            return false;
+        }
+        if (last.failure != null) {
+            throw last.failure;
+        }
+        if (System.currentTimeMillis() > last.expiresAt) {
+            throw new RedisEntraIDException("Token is expired!", null, Classification.PERMANENT, 0);
+        }
+        return true;
+    }
+
+    private void verify(String token, byte[] digest) {
+        try {
+            DecodedJWT jwt = verifier.verify(token);
+            lastValidation = new Validation(digest,
+                    jwt.getExpiresAt() == null ? Long.MAX_VALUE : jwt.getExpiresAt().getTime(), null);
+        } catch (JWTVerificationException e) {
+            RedisEntraIDException failure = new RedisEntraIDException("Token is not valid!", e,
+                    Classification.PERMANENT, 0);
+            lastValidation = new Validation(digest, 0, failure);
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the SHA-256 of the given value, read through a small buffer that is zeroed after, so that
+     * the value is not copied to the heap
+     */
+    private static byte[] digest(ByteBuffer value) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RedisEntraIDException("SHA-256 is not available!", e);
+        }
+        byte[] chunk = new byte[64];
+        ByteBuffer remaining = value.duplicate();
+        while (remaining.hasRemaining()) {
+            int length = Math.min(chunk.length, remaining.remaining());
+            remaining.get(chunk, 0, length);
+            sha.update(chunk, 0, length);
+        }
+        Arrays.fill(chunk, (byte) 0);
+        return sha.digest();
+    }
+
+    private RSAPublicKey getKey(String keyId) {
+        if (keyId == null) {
+            throw new RedisEntraIDException("Token has no key id!", null, Classification.PERMANENT,
+                    0);
+        }
+        long now = System.currentTimeMillis();
+        RSAPublicKey key = keys.get(keyId);
+        if (key != null) {
+            if (now - fetchedAt > refreshIntervalInMs && refreshing.compareAndSet(false, true)) {
+                refresher.execute(() -> {
+                    try {
+                        fetch();
+                    } catch (RuntimeException e) {
+                        // the cached keys are used until a fetch succeeds
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            }
+            return key;
+        }
+        Long unknownSince = unknownKeyIds.get(keyId);
+        if (unknownSince != null && now - unknownSince < NEGATIVE_CACHE_IN_MS) {
+            throw new RedisEntraIDException("Unknown signing key " + keyId + "!", null,
+                    Classification.PERMANENT, 0);
+        }
+        long failedFor = NEGATIVE_CACHE_IN_MS - (now - fetchFailedAt);
+        if (failedFor > 0) {
+            throw new RedisEntraIDException("Failed to fetch the signing keys!", null,
+                    Classification.TRANSIENT, failedFor);
+        }
+        synchronized (this) {
+            key = keys.get(keyId);
+            if (key == null) {
+                fetch();
+                key = keys.get(keyId);
+            }
+        }
+        if (key == null) {
+            unknownKeyIds.put(keyId, System.currentTimeMillis());
+            throw new RedisEntraIDException("Unknown signing key " + keyId + "!", null,
+                    Classification.PERMANENT, 0);
+        }
+        return key;
+    }
+
+    private void fetch() {
+        String jwks = httpClient.get(jwksUrl);
+        Map<String, RSAPublicKey> fetched;
+        try {
+            if (jwks == null) {
+                throw new IOException("No keys from " + jwksUrl);
+            }
+            fetched = parse(jwks);
+        } catch (IOException | GeneralSecurityException e) {
+            fetchFailedAt = System.currentTimeMillis();
+            throw new RedisEntraIDException("Failed to fetch the signing keys!", e,
+                    Classification.TRANSIENT, NEGATIVE_CACHE_IN_MS);
+        }
+        keys = fetched;
+        fetchedAt = System.currentTimeMillis();
+        fetchFailedAt = 0;
+        unknownKeyIds.clear();
+    }
+
+    static Map<String, RSAPublicKey> parse(String jwks)
+            throws IOException, GeneralSecurityException {
+        Map<String, RSAPublicKey> parsed = new HashMap<>();
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        for (JsonNode key : mapper.readTree(jwks).path("keys")) {
+            if (!"RSA".equals(key.path("kty").asText()) || !key.hasNonNull("kid")
+                    || (key.has("use") && !"sig".equals(key.path("use").asText()))) {
+                continue;
+            }
+            BigInteger modulus = new BigInteger(1, decoder.decode(key.path("n").asText()));
+            BigInteger exponent = new BigInteger(1, decoder.decode(key.path("e").asText()));
+            parsed.put(key.get("kid").asText(), (RSAPublicKey) keyFactory
+                    .generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    private final class KeyProvider implements RSAKeyProvider {
+        @Override
+        public RSAPublicKey getPublicKeyById(String keyId) {
+            return getKey(keyId);
+        }
+
+        @Override
+        public RSAPrivateKey getPrivateKey() {
+            return null;
+        }
+
+        @Override
+        public String getPrivateKeyId() {
+            return null;
+        }
+    }
+}
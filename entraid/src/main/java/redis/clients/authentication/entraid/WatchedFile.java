@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication.entraid;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentHashMap;
+
+import redis.clients.authentication.core.IdentityProviderException.Classification;
+
+/**
+ * Keeps the content of a credential file in memory, e.g. the service account token Kubernetes projects
+ * for Azure workload identity or a PEM file with a certificate, and re-reads it only after it changed
+ * on disk.
+ * <p>
+ * Changes are detected with a {@link WatchService} on the directory of the file, which is watched by a
+ * single thread for all the files of the process. Any change in the directory marks its files as
+ * changed, since Kubernetes rotates the token by swapping a symbolic link rather than writing the file.
+ * Where the directory can not be watched, the file is read on every request.
+ */
+final class WatchedFile {
+
+    private static final ConcurrentHashMap<Path, WatchedFile> files = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Path, Boolean> watchedDirs = new ConcurrentHashMap<>();
+    private static WatchService watchService;
+
+    private final Path path;
+    private volatile String content;
+    private volatile boolean changed = true;
+    private volatile boolean watched;
+
+    private WatchedFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the watched file at the given path, shared by every caller in this process
+     * @param path
+     * @return
+     */
+    static WatchedFile of(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        WatchedFile file = files.computeIfAbsent(absolute, WatchedFile::new);
+        if (!file.watched) {
+            file.watched = watch(absolute.getParent());
+        }
+        return file;
+    }
+
+    /**
+     * Returns the current content of the file, read again only if it changed since the last read
+     * @return
+     */
+    String get() {
+        if (changed || !watched) {
+            synchronized (this) {
+                if (changed || !watched) {
+                    // cleared before reading, so that a change during the read is not lost
+                    changed = false;
+                    content = read();
+                }
+            }
+        }
+        return content;
+    }
+
+    private String read() {
+        try {
+            String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+            if (text.isEmpty()) {
+                throw new IOException("File " + path + " is empty!");
+            }
+            return text;
+        } catch (IOException e) {
+            changed = true;
+            throw new RedisEntraIDException("Failed to read " + path + "!", e,
+                    Classification.TRANSIENT, 0);
+        }
+    }
+
+    private static synchronized boolean watch(Path dir) {
+        if (dir == null) {
+            return false;
+        }
+        if (watchedDirs.containsKey(dir)) {
+            return true;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(WatchedFile::processEvents,
+                        "entraid-file-watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.put(dir, Boolean.TRUE);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            // the events do not tell reliably which file changed, e.g. after a symbolic link swap
+            key.pollEvents();
+            Path dir = (Path) key.watchable();
+            for (WatchedFile file : files.values()) {
+                if (dir.equals(file.path.getParent())) {
+                    file.changed = true;
+                }
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(dir);
+                for (WatchedFile file : files.values()) {
+                    if (dir.equals(file.path.getParent())) {
+                        file.watched = false;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ package redis.clients.authentication;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
@@ -22,6 +23,7 @@ import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.both;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
@@ -51,6 +53,8 @@ import com.microsoft.aad.msal4j.IAuthenticationResult;
 import com.microsoft.aad.msal4j.IClientSecret;
 import com.microsoft.aad.msal4j.ManagedIdentityId;
 
+import redis.clients.authentication.core.FailoverIdentityProvider;
+import redis.clients.authentication.core.FailoverIdentityProviderConfig;
 import redis.clients.authentication.core.IdentityProvider;
 import redis.clients.authentication.core.IdentityProviderConfig;
 import redis.clients.authentication.core.SimpleToken;
@@ -60,11 +64,14 @@ import redis.clients.authentication.core.TokenListener;
 import redis.clients.authentication.core.TokenManager;
 import redis.clients.authentication.core.TokenManagerConfig;
 import redis.clients.authentication.core.TokenRequestException;
+import redis.clients.authentication.entraid.CircuitBreaker;
 import redis.clients.authentication.entraid.EntraIDIdentityProvider;
 import redis.clients.authentication.entraid.EntraIDTokenAuthConfigBuilder;
 import redis.clients.authentication.entraid.JWToken;
 import redis.clients.authentication.entraid.ManagedIdentityInfo;
+import redis.clients.authentication.entraid.RedisEntraIDException;
 import redis.clients.authentication.entraid.ServicePrincipalInfo;
+import redis.clients.authentication.entraid.ServicePrincipalInfo.ServicePrincipalAccess;
 import redis.clients.authentication.entraid.ManagedIdentityInfo.UserManagedIdentityType;
 
 public class EntraIDUnitTests {
@@ -143,6 +150,42 @@ public class EntraIDUnitTests {
         }
     }
 
+    @Test
+    public void providerIsSharedTest() {
+        IdentityProviderConfig config = EntraIDTokenAuthConfigBuilder.builder()
+                .authority("https://login.microsoftonline.com/tenant/").clientId("clientId1")
+                .secret("credential1").scopes(Collections.singleton("scope1")).build()
+                .getIdentityProviderConfig();
+        try (MockedConstruction<EntraIDIdentityProvider> mockedConstructor = mockConstruction(
+            EntraIDIdentityProvider.class)) {
+            IdentityProvider provider = config.getProvider();
+            assertSame(provider, config.getProvider());
+            assertEquals(1, mockedConstructor.constructed().size());
+        }
+    }
+
+    @Test
+    public void failoverConfigTest() {
+        EntraIDTokenAuthConfigBuilder builder = EntraIDTokenAuthConfigBuilder.builder()
+                .authority("https://login.microsoftonline.com/tenant/").clientId("clientId1")
+                .secret("credential1").systemAssignedManagedIdentity()
+                .scopes(Collections.singleton("scope1"));
+        assertThrows(RedisEntraIDException.class, builder::build);
+
+        IdentityProviderConfig config = builder.failover(1000, true).build()
+                .getIdentityProviderConfig();
+        assertTrue(config instanceof FailoverIdentityProviderConfig);
+        List<IdentityProviderConfig> chain = ((FailoverIdentityProviderConfig) config).getConfigs();
+        assertEquals(2, chain.size());
+        try (MockedConstruction<EntraIDIdentityProvider> mockedConstructor = mockConstruction(
+            EntraIDIdentityProvider.class)) {
+            FailoverIdentityProvider provider = (FailoverIdentityProvider) config.getProvider();
+            // the chain is made of the providers of its configs
+            assertEquals(mockedConstructor.constructed(), provider.getProviders());
+            assertSame(chain.get(0).getProvider(), provider.getProviders().get(0));
+        }
+    }
+
     // T.1.2
     // Implement a stubbed IdentityProvider and verify that the TokenManager works normally and handles:
     // network errors or other exceptions thrown from the IdentityProvider
@@ -476,6 +519,39 @@ public class EntraIDUnitTests {
             lessThanOrEqualTo((Long) 10L));
     }
 
+    @Test
+    public void servicePrincipalInfoTest() {
+        // a null secret still resolves to the secret constructor
+        assertEquals(ServicePrincipalAccess.WithSecret,
+            new ServicePrincipalInfo("client", null, "authority").getAccessWith());
+        assertEquals(ServicePrincipalAccess.WithFederatedToken, ServicePrincipalInfo
+                .withFederatedTokenFile("client", Paths.get("token"), "authority").getAccessWith());
+        assertEquals(ServicePrincipalAccess.WithCredentialSource, ServicePrincipalInfo
+                .withCredentialSource("client", null, "authority").getAccessWith());
+    }
+
+    @Test
+    public void circuitBreakerOfDefaultAuthorityTest() {
+        Set<String> scopes = Collections.singleton("https://redis.azure.com");
+        try {
+            new EntraIDIdentityProvider(new ServicePrincipalInfo("client", "secret", null), scopes,
+                    1000).useCircuitBreaker(new CircuitBreaker.Policy(3, 0, 1000));
+            assertEquals(CircuitBreaker.State.CLOSED,
+                CircuitBreaker.stateOf(ConfidentialClientApplication.DEFAULT_AUTHORITY));
+
+            // a provider of the same endpoint can not ask for another policy
+            EntraIDIdentityProvider another = new EntraIDIdentityProvider(
+                    new ServicePrincipalInfo("another", "secret", null), scopes, 1000);
+            another.useCircuitBreaker(new CircuitBreaker.Policy(3, 0, 1000));
+            assertThrows(RedisEntraIDException.class,
+                () -> another.useCircuitBreaker(new CircuitBreaker.Policy(5, 0, 1000)));
+        } finally {
+            // the breakers are shared by the process, the other tests may use another policy
+            CircuitBreaker.remove(ConfidentialClientApplication.DEFAULT_AUTHORITY);
+        }
+        assertNull(CircuitBreaker.stateOf(ConfidentialClientApplication.DEFAULT_AUTHORITY));
+    }
+
     // T.2.5
     // Ensure that token objects are immutable and cannot be modified after creation.
     @Test
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.microsoft.aad.msal4j.HttpMethod;
+import com.microsoft.aad.msal4j.HttpRequest;
+import com.microsoft.aad.msal4j.HttpResponse;
+import com.microsoft.aad.msal4j.IHttpClient;
+import com.microsoft.aad.msal4j.IHttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+
+/**
+ * Local stand-in for Entra ID and the IMDS managed identity endpoint, built on the JDK HTTP server.
+ * It serves the v2.0 token endpoint, instance and OpenID discovery, JWKS and IMDS tokens, and mints
+ * RS256 signed JWTs. Latency, token lifetime, error rate and throttling (429 with Retry-After) are
+ * configurable at any time, so that {@code EntraIDIdentityProvider} can be exercised end to end,
+ * including the HTTP behavior of MSAL, without any network access.
+ * <p>
+ * MSAL is pointed at the server through its public API only: the providers under test use the
+ * transport of {@link #getHttpClient()}, which sends the requests for the Entra ID instance discovery
+ * host and for IMDS here. Call {@link #install()} to make the JDK trust the server's self-signed
+ * certificate, for the requests sent by other transports; {@link #close()} reverts that.
+ */
+public class FakeEntraIDServer implements AutoCloseable {
+
+    public static final String TENANT = "fake-tenant";
+    public static final String KEY_ID = "fake-entraid-key";
+    private static final String KEYSTORE = "fake-entraid.p12";
+    private static final char[] KEYSTORE_PASSWORD = "fake-entraid".toCharArray();
+    private static final String INSTANCE_DISCOVERY_HOST = "login.microsoftonline.com";
+    private static final String IMDS_HOST = "169.254.169.254";
+    // MSAL keeps the instance metadata of an authority host for the life of the process, so every
+    // server of the process listens on the port the first one got
+    private static volatile int port;
+
+    private final RSAPrivateKey signingKey;
+    private final RSAPublicKey verificationKey;
+    private final X509Certificate certificate;
+    private final SSLContext sslContext;
+    private final Algorithm algorithm;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, String> clientSecrets = new ConcurrentHashMap<>();
+    private HttpsServer server;
+    private HttpServer imdsServer;
+    private SSLContext defaultSslContext;
+
+    private volatile long tokenLifetimeMillis = 60 * 60 * 1000;
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds = 1;
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger managedIdentityRequests = new AtomicInteger();
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+    private final AtomicInteger keysRequests = new AtomicInteger();
+    private final AtomicInteger throttledResponses = new AtomicInteger();
+    private final AtomicInteger errorResponses = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final Set<String> clientAssertions = ConcurrentHashMap.newKeySet();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    public FakeEntraIDServer() {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(KEYSTORE)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, KEYSTORE_PASSWORD);
+            String alias = keyStore.aliases().nextElement();
+            signingKey = (RSAPrivateKey) keyStore.getKey(alias, KEYSTORE_PASSWORD);
+            certificate = (X509Certificate) keyStore.getCertificate(alias);
+            verificationKey = (RSAPublicKey) certificate.getPublicKey();
+
+            KeyManagerFactory kmf = KeyManagerFactory
+                    .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, KEYSTORE_PASSWORD);
+            TrustManagerFactory tmf = TrustManagerFactory
+                    .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keyStore);
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load fake Entra ID keystore!", e);
+        }
+        algorithm = Algorithm.RSA256(verificationKey, signingKey);
+    }
+
+    public FakeEntraIDServer start() {
+        try {
+            InetAddress loopback = InetAddress.getLoopbackAddress();
+            server = HttpsServer.create(new InetSocketAddress(loopback, port), 0);
+            port = server.getAddress().getPort();
+            server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server.createContext("/", exchange -> handle(exchange, this::route));
+            server.setExecutor(executor);
+            server.start();
+
+            imdsServer = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+            imdsServer.createContext("/", exchange -> handle(exchange, this::managedIdentity));
+            imdsServer.setExecutor(executor);
+            imdsServer.start();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to start fake Entra ID server!", e);
+        }
+        return this;
+    }
+
+    /**
+     * Trusts the certificate of this server for the HTTPS connections of the JDK, e.g. of the
+     * transports that are not the one of {@link #getHttpClient()}.
+     */
+    public FakeEntraIDServer install() {
+        try {
+            defaultSslContext = SSLContext.getDefault();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        SSLContext.setDefault(sslContext);
+        HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
+        return this;
+    }
+
+    /**
+     * Returns a transport for MSAL that sends the instance discovery requests MSAL sends to
+     * login.microsoftonline.com, and the IMDS managed identity requests, to this server. The requests to
+     * the authority of this server are sent as they are.
+     */
+    public IHttpClient getHttpClient() {
+        return new IHttpClient() {
+            @Override
+            public IHttpResponse send(HttpRequest request) throws Exception {
+                return FakeEntraIDServer.this.send(request);
+            }
+        };
+    }
+
+    private IHttpResponse send(HttpRequest request) throws IOException {
+        URL url = request.url();
+        if (INSTANCE_DISCOVERY_HOST.equalsIgnoreCase(url.getHost())) {
+            url = new URL("https", "localhost", server.getAddress().getPort(), url.getFile());
+        } else if (IMDS_HOST.equals(url.getHost())) {
+            url = new URL("http", "localhost", imdsServer.getAddress().getPort(), url.getFile());
+        }
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslContext.getSocketFactory());
+        }
+        if (request.headers() != null) {
+            request.headers().forEach((name, value) -> {
+                if (value != null) {
+                    connection.addRequestProperty(name, value);
+                }
+            });
+        }
+        if (request.httpMethod() == HttpMethod.POST) {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.body() == null ? new byte[0]
+                        : request.body().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        HttpResponse response = new HttpResponse();
+        response.statusCode(connection.getResponseCode());
+        response.addHeaders(connection.getHeaderFields());
+        InputStream body = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (body != null) {
+            try (InputStream in = body) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) != -1;) {
+                    out.write(buffer, 0, n);
+                }
+            }
+        }
+        response.body(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        return response;
+    }
+
+    @Override
+    public void close() {
+        if (defaultSslContext != null) {
+            SSLContext.setDefault(defaultSslContext);
+            HttpsURLConnection.setDefaultSSLSocketFactory(defaultSslContext.getSocketFactory());
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+        if (imdsServer != null) {
+            imdsServer.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    public String getAuthority() {
+        return "https://localhost:" + server.getAddress().getPort() + "/" + TENANT + "/";
+    }
+
+    public String getIssuer() {
+        return getAuthority() + "v2.0";
+    }
+
+    public String getManagedIdentityEndpoint() {
+        return "http://localhost:" + imdsServer.getAddress().getPort();
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    public RSAPublicKey getVerificationKey() {
+        return verificationKey;
+    }
+
+    /**
+     * Certificate and key pair that can also be used as the credential of a service principal.
+     */
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return signingKey;
+    }
+
+    /**
+     * Registers a client and its secret. As long as no client is registered any client is accepted.
+     */
+    public FakeEntraIDServer registerClient(String clientId, String secret) {
+        clientSecrets.put(clientId, secret);
+        return this;
+    }
+
+    public FakeEntraIDServer tokenLifetime(long millis) {
+        this.tokenLifetimeMillis = millis;
+        return this;
+    }
+
+    public FakeEntraIDServer latency(long minMillis, long maxMillis) {
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * Fraction of the token requests that fail with 503 temporarily_unavailable.
+     */
+    public FakeEntraIDServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of the token requests that are rejected with 429 and the given Retry-After.
+     */
+    public FakeEntraIDServer throttleRate(double throttleRate, int retryAfterSeconds) {
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getManagedIdentityRequests() {
+        return managedIdentityRequests.get();
+    }
+
+    public int getDiscoveryRequests() {
+        return discoveryRequests.get();
+    }
+
+    public int getKeysRequests() {
+        return keysRequests.get();
+    }
+
+    public int getThrottledResponses() {
+        return throttledResponses.get();
+    }
+
+    public int getErrorResponses() {
+        return errorResponses.get();
+    }
+
+    public int getPeakConcurrency() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Number of distinct client addresses the requests came from, that is the number of connections.
+     */
+    public int getConnections() {
+        return connections.size();
+    }
+
+    /**
+     * Number of distinct client assertions the token endpoint accepted.
+     */
+    public int getClientAssertions() {
+        return clientAssertions.size();
+    }
+
+    private interface Handler {
+        Response handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+        private final Map<String, String> headers = new HashMap<>();
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        connections.add(exchange.getRemoteAddress());
+        try {
+            Response response = handler.handle(exchange);
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            response.headers.forEach((k, v) -> exchange.getResponseHeaders().add(k, v));
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/discovery/instance")) {
+            discoveryRequests.incrementAndGet();
+            return new Response(200, instanceDiscovery());
+        }
+        if (path.endsWith("/.well-known/openid-configuration")) {
+            discoveryRequests.incrementAndGet();
+            return new Response(200, openIdConfiguration());
+        }
+        if (path.endsWith("/discovery/v2.0/keys")) {
+            keysRequests.incrementAndGet();
+            return new Response(200, jwks());
+        }
+        if (path.endsWith("/oauth2/v2.0/token") && "POST".equals(exchange.getRequestMethod())) {
+            return token(exchange);
+        }
+        return error(404, "not_found", "No such endpoint: " + path, 0);
+    }
+
+    private Response token(HttpExchange exchange) throws IOException {
+        tokenRequests.incrementAndGet();
+        Map<String, String> form = parseQuery(readBody(exchange));
+        Response failure = injectFailure();
+        if (failure != null) {
+            return failure;
+        }
+        String clientId = form.get("client_id");
+        if (clientId == null) {
+            return error(400, "invalid_request",
+                "AADSTS900144: The request body must contain the following parameter: 'client_id'.",
+                900144);
+        }
+        if (!clientSecrets.isEmpty()) {
+            if (!clientSecrets.containsKey(clientId)) {
+                return error(400, "unauthorized_client", "AADSTS700016: Application with identifier '"
+                        + clientId + "' was not found in the directory '" + TENANT + "'.",
+                    700016);
+            }
+            if (form.containsKey("client_secret")
+                    && !clientSecrets.get(clientId).equals(form.get("client_secret"))) {
+                return error(401, "invalid_client",
+                    "AADSTS7000215: Invalid client secret provided.", 7000215);
+            }
+        }
+        String clientAssertion = form.get("client_assertion");
+        if (clientAssertion != null) {
+            // assertions are signed with the certificate of this server, see getCertificate()
+            try {
+                JWT.require(Algorithm.RSA256(verificationKey, null)).withIssuer(clientId)
+                        .withSubject(clientId).withAudience(getAuthority() + "oauth2/v2.0/token")
+                        .build().verify(clientAssertion);
+            } catch (JWTVerificationException e) {
+                return error(401, "invalid_client",
+                    "AADSTS700027: Client assertion failed signature validation.", 700027);
+            }
+            clientAssertions.add(clientAssertion);
+        }
+        long lifetimeInSeconds = tokenLifetimeMillis / 1000;
+        String accessToken = mint(clientId, form.get("scope"));
+        return new Response(200,
+                "{\"token_type\":\"Bearer\",\"expires_in\":" + lifetimeInSeconds
+                        + ",\"ext_expires_in\":" + lifetimeInSeconds + ",\"access_token\":\""
+                        + accessToken + "\"}");
+    }
+
+    private Response managedIdentity(HttpExchange exchange) throws IOException {
+        managedIdentityRequests.incrementAndGet();
+        if (!exchange.getRequestURI().getPath().endsWith("/identity/oauth2/token")) {
+            return error(404, "not_found", "No such endpoint!", 0);
+        }
+        if (!"true".equals(exchange.getRequestHeaders().getFirst("Metadata"))) {
+            return error(400, "invalid_request", "Required metadata header not specified", 0);
+        }
+        Response failure = injectFailure();
+        if (failure != null) {
+            return failure;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String resource = query.get("resource");
+        String clientId = query.getOrDefault("client_id", "system-assigned");
+        String accessToken = mint(clientId, resource);
+        long expiresOn = (System.currentTimeMillis() + tokenLifetimeMillis) / 1000;
+        return new Response(200, "{\"access_token\":\"" + accessToken + "\",\"expires_on\":\""
+                + expiresOn + "\",\"expires_in\":\"" + tokenLifetimeMillis / 1000
+                + "\",\"resource\":\"" + resource + "\",\"token_type\":\"Bearer\",\"client_id\":\""
+                + clientId + "\"}");
+    }
+
+    private Response injectFailure() {
+        long latency = minLatencyMillis
+                + (maxLatencyMillis > minLatencyMillis
+                        ? ThreadLocalRandom.current().nextLong(maxLatencyMillis - minLatencyMillis)
+                        : 0);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < throttleRate) {
+            throttledResponses.incrementAndGet();
+            return error(429, "too_many_requests",
+                "AADSTS50196: The server terminated an operation because it encountered a client request loop.",
+                50196).header("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+        if (dice < throttleRate + errorRate) {
+            errorResponses.incrementAndGet();
+            return error(503, "temporarily_unavailable",
+                "AADSTS90033: A transient error has occurred. Please try again.", 90033);
+        }
+        return null;
+    }
+
+    private String mint(String clientId, String scope) {
+        long now = System.currentTimeMillis();
+        String audience = "";
+        if (scope != null) {
+            // MSAL adds the OIDC scopes to the one of the resource
+            for (String requested : scope.split(" ")) {
+                if (requested.endsWith("/.default")) {
+                    audience = requested.replace("/.default", "");
+                }
+            }
+        }
+        return JWT.create().withKeyId(KEY_ID).withIssuer(getIssuer()).withAudience(audience)
+                .withIssuedAt(new Date(now)).withNotBefore(new Date(now))
+                .withExpiresAt(new Date(now + tokenLifetimeMillis))
+                .withClaim("oid", UUID.nameUUIDFromBytes(clientId.getBytes(StandardCharsets.UTF_8))
+                        .toString())
+                .withClaim("tid", TENANT).withClaim("appid", clientId)
+                .withJWTId(UUID.randomUUID().toString()).sign(algorithm);
+    }
+
+    private String instanceDiscovery() {
+        // MSAL looks the token cache up by host and port, while it connects to the preferred network host
+        String hostAndPort = "localhost:" + server.getAddress().getPort();
+        return "{\"tenant_discovery_endpoint\":\"" + getIssuer()
+                + "/.well-known/openid-configuration\",\"api-version\":\"1.1\","
+                + "\"metadata\":[{\"preferred_network\":\"localhost\",\"preferred_cache\":\""
+                + hostAndPort + "\",\"aliases\":[\"localhost\",\"" + hostAndPort + "\"]}]}";
+    }
+
+    private String openIdConfiguration() {
+        String base = "https://localhost:" + server.getAddress().getPort() + "/" + TENANT;
+        return "{\"issuer\":\"" + getIssuer() + "\",\"token_endpoint\":\"" + base
+                + "/oauth2/v2.0/token\",\"authorization_endpoint\":\"" + base
+                + "/oauth2/v2.0/authorize\",\"jwks_uri\":\"" + base
+                + "/discovery/v2.0/keys\",\"id_token_signing_alg_values_supported\":[\"RS256\"],"
+                + "\"response_types_supported\":[\"code\",\"id_token\",\"token\"]}";
+    }
+
+    private String jwks() {
+        Base64.Encoder url = Base64.getUrlEncoder().withoutPadding();
+        try {
+            return "{\"keys\":[{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"" + KEY_ID + "\",\"n\":\""
+                    + url.encodeToString(unsigned(verificationKey.getModulus())) + "\",\"e\":\""
+                    + url.encodeToString(unsigned(verificationKey.getPublicExponent()))
+                    + "\",\"x5c\":[\"" + Base64.getEncoder().encodeToString(certificate.getEncoded())
+                    + "\"]}]}";
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    private static Response error(int status, String error, String description, int code) {
+        return new Response(status,
+                "{\"error\":\"" + error + "\",\"error_description\":\"" + description
+                        + "\",\"error_codes\":[" + code + "],\"trace_id\":\"" + UUID.randomUUID()
+                        + "\",\"correlation_id\":\"" + UUID.randomUUID() + "\"}");
+    }
+
+    private static String readBody(HttpExchange exchange) {
+        Scanner scanner = new Scanner(exchange.getRequestBody(), StandardCharsets.UTF_8.name())
+                .useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024, Redis Ltd. and Contributors
+ * All rights reserved.
+ *
+ * Licensed under the MIT License.
+ */
+package redis.clients.authentication;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import redis.clients.authentication.core.IdentityProvider;
+import redis.clients.authentication.core.IdentityProviderConfig;
+import redis.clients.authentication.core.TokenAuthConfig;
+import redis.clients.authentication.entraid.EntraIDIdentityProvider;
+import redis.clients.authentication.entraid.EntraIDTokenAuthConfigBuilder;
+import redis.clients.authentication.entraid.ServicePrincipalInfo;
+
+/**
+ * Measures the heap retained by the identity providers of many connection pools sharing one config,
+ * with a provider per pool, as getProvider() used to create, against the single provider the config
+ * now shares. Every provider is warmed up, so that it holds its MSAL application.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=redis.clients.authentication.ProviderHeapBenchmark [-Dexec.args=pools]}.
+ */
+public class ProviderHeapBenchmark {
+
+    private static final Set<String> SCOPES = Collections
+            .singleton("https://redis.azure.com/.default");
+
+    public static void main(String[] args) {
+        int pools = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        try (FakeEntraIDServer server = new FakeEntraIDServer().start().install()) {
+            ServicePrincipalInfo info = new ServicePrincipalInfo("client", "secret",
+                    server.getAuthority());
+            // let MSAL load its classes and cache the authority metadata before measuring
+            new EntraIDIdentityProvider(info, SCOPES, 1000).warmUp();
+
+            List<Object> perPool = new ArrayList<>();
+            long before = usedHeap();
+            for (int i = 0; i < pools; i++) {
+                EntraIDIdentityProvider provider = new EntraIDIdentityProvider(info, SCOPES, 1000);
+                provider.warmUp();
+                perPool.add(provider);
+            }
+            long perPoolBytes = usedHeap() - before;
+            perPool.clear();
+
+            TokenAuthConfig config = EntraIDTokenAuthConfigBuilder.builder().clientId("client")
+                    .secret("secret").authority(server.getAuthority()).scopes(SCOPES).build();
+            IdentityProviderConfig providerConfig = config.getIdentityProviderConfig();
+            List<IdentityProvider> shared = new ArrayList<>();
+            before = usedHeap();
+            for (int i = 0; i < pools; i++) {
+                IdentityProvider provider = providerConfig.getProvider();
+                ((EntraIDIdentityProvider) provider).warmUp();
+                shared.add(provider);
+            }
+            long sharedBytes = usedHeap() - before;
+
+            System.out.printf("pools: %d%n", pools);
+            System.out.printf("provider per pool: %d KB (%d bytes per pool)%n",
+                perPoolBytes / 1024, perPoolBytes / pools);
+            System.out.printf("shared provider:   %d KB (%d bytes per pool)%n", sharedBytes / 1024,
+                sharedBytes / pools);
+            System.out.printf("saved per pool:    %d bytes%n", (perPoolBytes - sharedBytes) / pools);
+        }
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}